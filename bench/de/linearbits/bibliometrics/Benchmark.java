@@ -0,0 +1,103 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.IOException;
+
+/**
+ * A benchmark. The life cycle follows JMH: {@link #setup()} is called once, {@link #prepare()} and
+ * {@link #finish()} are called before and after each invocation of {@link #run()} and are not measured,
+ * and {@link #teardown()} is called once at the end.
+ *
+ * @author Fabian Prasser
+ */
+abstract class Benchmark {
+
+    /** Name*/
+    private final String name;
+    /** Number of operations performed by each invocation*/
+    private final int    operations;
+
+    /**
+     * Creates a new instance, which performs one operation per invocation
+     * @param name
+     */
+    Benchmark(String name) {
+        this(name, 1);
+    }
+
+    /**
+     * Creates a new instance
+     * @param name
+     * @param operations Number of operations performed by each invocation
+     */
+    Benchmark(String name, int operations) {
+        this.name = name;
+        this.operations = operations;
+    }
+
+    /**
+     * Returns the name
+     * @return
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of operations performed by each invocation
+     * @return
+     */
+    int getOperations() {
+        return operations;
+    }
+
+    /**
+     * Called after each invocation
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        // Empty by design
+    }
+
+    /**
+     * Called before each invocation
+     * @throws IOException
+     */
+    void prepare() throws IOException {
+        // Empty by design
+    }
+
+    /**
+     * Performs the measured work. Returns a value derived from the result, so that the work cannot
+     * be eliminated.
+     * @return
+     * @throws IOException
+     */
+    abstract long run() throws IOException;
+
+    /**
+     * Called once before all invocations
+     * @throws IOException
+     */
+    void setup() throws IOException {
+        // Empty by design
+    }
+
+    /**
+     * Called once after all invocations
+     * @throws IOException
+     */
+    void teardown() throws IOException {
+        // Empty by design
+    }
+}
@@ -0,0 +1,205 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for the cache of citations. All benchmarks for a size share the same files, which are
+ * written by the first one.
+ *
+ * @author Fabian Prasser
+ */
+class BenchmarkCache {
+
+    /**
+     * Base class, which writes the records of the cache, if needed
+     * @author Fabian Prasser
+     */
+    private static abstract class CacheBenchmark extends Benchmark {
+
+        /** Size of the cache for which the files have been written*/
+        private static int size = -1;
+
+        /** Entries*/
+        final int          entries;
+
+        /**
+         * Creates a new instance
+         * @param name
+         * @param entries
+         * @param operations
+         */
+        CacheBenchmark(String name, int entries, int operations) {
+            super(name + "." + entries, operations);
+            this.entries = entries;
+        }
+
+        @Override
+        void setup() throws IOException {
+            if (size != entries) {
+                Fixtures.writeCache(entries);
+                new ReaderCache(Fixtures.DATA, new Dictionary(), new Metrics()).close();
+                size = entries;
+            }
+        }
+    }
+
+    /** Number of lookups per invocation*/
+    private static final int LOOKUPS = 1 << 16;
+    /** Number of changes per invocation*/
+    private static final int CHANGES = 1 << 10;
+
+    /**
+     * Returns all benchmarks
+     * @param sizes Numbers of entries
+     * @return
+     */
+    static List<Benchmark> getBenchmarks(int[] sizes) {
+        List<Benchmark> result = new ArrayList<Benchmark>();
+        for (final int entries : sizes) {
+
+            // Converts the records into a snapshot, as on first use
+            result.add(new CacheBenchmark("cache.convert", entries, 1) {
+
+                /** Cache*/
+                private ReaderCache cache;
+
+                @Override
+                void finish() throws IOException {
+                    cache.close();
+                }
+
+                @Override
+                void prepare() throws IOException {
+                    File snapshot = new File(Fixtures.DATA, "cache.bin");
+                    if (!snapshot.delete()) {
+                        throw new IOException("Cannot delete: " + snapshot);
+                    }
+                }
+
+                @Override
+                long run() throws IOException {
+                    cache = new ReaderCache(Fixtures.DATA, new Dictionary(), new Metrics());
+                    return cache.getStatistics().getCapacity();
+                }
+            });
+
+            // Opens the snapshot
+            result.add(new CacheBenchmark("cache.load", entries, 1) {
+
+                /** Cache*/
+                private ReaderCache cache;
+
+                @Override
+                void finish() throws IOException {
+                    cache.close();
+                }
+
+                @Override
+                long run() throws IOException {
+                    Dictionary strings = new Dictionary();
+                    cache = new ReaderCache(Fixtures.DATA, strings, new Metrics());
+                    return cache.lookup(strings.encode(Fixtures.getCachedTitle(0)), Fixtures.LAST);
+                }
+            });
+
+            // Looks up random entries, which are read from the snapshot or from memory
+            result.add(new CacheBenchmark("cache.lookup", entries, LOOKUPS) {
+
+                /** Cache*/
+                private ReaderCache cache;
+                /** Titles*/
+                private int[]       titles;
+                /** Years*/
+                private int[]       years;
+
+                @Override
+                long run() throws IOException {
+                    long result = 0;
+                    for (int i = 0; i < LOOKUPS; i++) {
+                        result += cache.lookup(titles[i], years[i]);
+                    }
+                    return result;
+                }
+
+                @Override
+                void setup() throws IOException {
+                    super.setup();
+                    Dictionary strings = new Dictionary();
+                    cache = new ReaderCache(Fixtures.DATA, strings, new Metrics());
+                    Random random = new Random(0);
+                    int count = Fixtures.getCachedTitles(entries);
+                    titles = new int[LOOKUPS];
+                    years = new int[LOOKUPS];
+                    for (int i = 0; i < LOOKUPS; i++) {
+                        titles[i] = strings.encode(Fixtures.getCachedTitle(random.nextInt(count)));
+                        years[i] = Fixtures.LAST - random.nextInt(10);
+                    }
+                }
+
+                @Override
+                void teardown() throws IOException {
+                    cache.close();
+                }
+            });
+
+            // Appends changes to the log, which is compacted in the background from time to time
+            result.add(new CacheBenchmark("cache.persist", entries, 1) {
+
+                /** Cache*/
+                private ReaderCache cache;
+                /** Strings*/
+                private Dictionary  strings;
+                /** Number of changes*/
+                private int         changes;
+
+                @Override
+                void prepare() throws IOException {
+                    for (int i = 0; i < CHANGES; i++) {
+                        int change = changes++;
+                        cache.put(strings.encode(Fixtures.getCachedTitle(change / 10)), Fixtures.FIRST - change % 10, change & 0xFF);
+                    }
+                }
+
+                @Override
+                long run() throws IOException {
+                    cache.persist();
+                    return changes;
+                }
+
+                @Override
+                void setup() throws IOException {
+                    super.setup();
+                    strings = new Dictionary();
+                    cache = new ReaderCache(Fixtures.DATA, strings, new Metrics());
+                    cache.setDurability(Durability.SYNC);
+                    changes = 0;
+                }
+
+                @Override
+                void teardown() throws IOException {
+                    cache.close();
+
+                    // Changes must not leak into the other benchmarks
+                    Fixtures.deleteCache();
+                    CacheBenchmark.size = -1;
+                }
+            });
+        }
+        return result;
+    }
+}
@@ -0,0 +1,156 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for scans over a generated DBLP dump
+ *
+ * @author Fabian Prasser
+ */
+class BenchmarkDBLP {
+
+    /**
+     * Scans over the dump with one of the parsers. The index is disabled.
+     * @author Fabian Prasser
+     */
+    private static class FilteredScan extends Benchmark {
+
+        /** Records*/
+        private final int     records;
+        /** Whether to use the fast parser*/
+        private final boolean fast;
+        /** Reader*/
+        private ReaderDBLP    dblp;
+
+        /**
+         * Creates a new instance
+         * @param name
+         * @param records
+         * @param fast
+         */
+        private FilteredScan(String name, int records, boolean fast) {
+            super(name);
+            this.records = records;
+            this.fast = fast;
+        }
+
+        @Override
+        long run() throws IOException {
+            List<QueryDBLP> queries = getQueries();
+            dblp.collect(queries);
+            return getResults(queries);
+        }
+
+        @Override
+        void setup() throws IOException {
+            dblp = new ReaderDBLP(Fixtures.getDBLP(records), new Metrics());
+            dblp.setIndexed(false);
+            dblp.setFastParser(fast);
+        }
+    }
+
+    /**
+     * Returns all benchmarks
+     * @param records Number of records in the dump
+     * @return
+     */
+    static List<Benchmark> getBenchmarks(final int records) {
+
+        List<Benchmark> result = new ArrayList<Benchmark>();
+
+        // Parses all records and builds the index from them, as on first use
+        result.add(new Benchmark("dblp.scan.full") {
+
+            /** Dump*/
+            private File       dump;
+            /** Index*/
+            private File       index;
+            /** Reader*/
+            private ReaderDBLP dblp;
+
+            @Override
+            void prepare() throws IOException {
+                if (index.exists() && !index.delete()) {
+                    throw new IOException("Cannot delete: " + index);
+                }
+                dblp = new ReaderDBLP(dump, new Metrics());
+            }
+
+            @Override
+            long run() throws IOException {
+                dblp.buildIndex();
+                return index.length();
+            }
+
+            @Override
+            void setup() throws IOException {
+                dump = Fixtures.getDBLP(records);
+                index = new File(dump.getParentFile(), "bench-" + records + ".idx");
+            }
+        });
+
+        // Collects the articles of one venue in two years while parsing, as without the index
+        result.add(new FilteredScan("dblp.scan.filtered", records, false));
+        result.add(new FilteredScan("dblp.scan.filtered.fast", records, true));
+
+        // Answers the same queries from the index
+        result.add(new Benchmark("dblp.scan.indexed") {
+
+            /** Reader*/
+            private ReaderDBLP dblp;
+
+            @Override
+            long run() throws IOException {
+                List<QueryDBLP> queries = getQueries();
+                dblp.collect(queries);
+                return getResults(queries);
+            }
+
+            @Override
+            void setup() throws IOException {
+                dblp = new ReaderDBLP(Fixtures.getDBLP(records), new Metrics());
+                dblp.buildIndex();
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns the queries for the articles of one journal in two years, as used for an impact factor
+     * @return
+     */
+    private static List<QueryDBLP> getQueries() {
+        List<QueryDBLP> queries = new ArrayList<QueryDBLP>();
+        queries.add(new QueryDBLP("article", "journal", Fixtures.getJournal(0), Fixtures.LAST - 2));
+        queries.add(new QueryDBLP("article", "journal", Fixtures.getJournal(0), Fixtures.LAST - 1));
+        return queries;
+    }
+
+    /**
+     * Returns the number of results of the given queries
+     * @param queries
+     * @return
+     */
+    private static long getResults(List<QueryDBLP> queries) {
+        long result = 0;
+        for (QueryDBLP query : queries) {
+            result += query.getResult().size();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,177 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * End-to-end benchmarks for impact factors over a generated DBLP dump, with a stub instead of Google Scholar
+ *
+ * @author Fabian Prasser
+ */
+class BenchmarkImpactFactor {
+
+    /**
+     * A source of citations, which derives counts from ids and responds after a fixed latency
+     * @author Fabian Prasser
+     */
+    private static class StubSource implements CitationSource {
+
+        /** Latency in milliseconds*/
+        private final long latency;
+
+        /**
+         * Creates a new instance
+         * @param latency
+         */
+        private StubSource(long latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public int getCitationCount(String id, int from, int to) throws IOException {
+            await();
+            int count = 0;
+            for (int year = from; year <= to; year++) {
+                count += (Integer.parseInt(id) + year) % 20;
+            }
+            return count;
+        }
+
+        @Override
+        public String getId(String title) throws IOException {
+            await();
+            return String.valueOf(title.hashCode() & 0xFFFF);
+        }
+
+        /**
+         * Waits for the latency
+         * @throws IOException
+         */
+        private void await() throws IOException {
+            if (latency > 0) {
+                try {
+                    Thread.sleep(latency);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while waiting");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns all benchmarks
+     * @param records Number of records in the dump
+     * @param latency Latency of the stub in milliseconds
+     * @return
+     */
+    static List<Benchmark> getBenchmarks(final int records, final long latency) {
+
+        List<Benchmark> result = new ArrayList<Benchmark>();
+
+        // Nothing is cached, all citations are fetched
+        result.add(new Benchmark("impact.cold") {
+
+            /** Instance*/
+            private Bibliometrics  bibliometrics;
+            /** Journal*/
+            private ElementJournal journal;
+
+            @Override
+            void finish() throws IOException {
+                bibliometrics.close();
+            }
+
+            @Override
+            void prepare() throws IOException {
+                Fixtures.deleteCache();
+                bibliometrics = open(records, latency);
+                journal = getJournal(bibliometrics);
+            }
+
+            @Override
+            long run() throws IOException {
+                return Double.doubleToLongBits(bibliometrics.getImpactFactor(journal, Fixtures.LAST));
+            }
+
+            @Override
+            void teardown() throws IOException {
+                Fixtures.deleteCache();
+            }
+        });
+
+        // All citations are cached
+        result.add(new Benchmark("impact.cached") {
+
+            /** Instance*/
+            private Bibliometrics  bibliometrics;
+            /** Journal*/
+            private ElementJournal journal;
+
+            @Override
+            long run() throws IOException {
+                return Double.doubleToLongBits(bibliometrics.getImpactFactor(journal, Fixtures.LAST));
+            }
+
+            @Override
+            void setup() throws IOException {
+                Fixtures.deleteCache();
+                bibliometrics = open(records, latency);
+                journal = getJournal(bibliometrics);
+                bibliometrics.getImpactFactor(journal, Fixtures.LAST);
+            }
+
+            @Override
+            void teardown() throws IOException {
+                bibliometrics.close();
+                Fixtures.deleteCache();
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns the first journal of the dump
+     * @param bibliometrics
+     * @return
+     * @throws IOException
+     */
+    private static ElementJournal getJournal(Bibliometrics bibliometrics) throws IOException {
+        String name = Fixtures.getJournal(0);
+        for (ElementJournal journal : bibliometrics.getJournals(name)) {
+            if (journal.getValue().equals(name)) {
+                return journal;
+            }
+        }
+        throw new IOException("No such journal: " + name);
+    }
+
+    /**
+     * Opens the dump with the given number of records and builds its index
+     * @param records
+     * @param latency
+     * @return
+     * @throws IOException
+     */
+    private static Bibliometrics open(int records, long latency) throws IOException {
+        File dump = Fixtures.getDBLP(records);
+        Bibliometrics bibliometrics = new Bibliometrics(dump, Fixtures.DATA);
+        bibliometrics.setCitationSource(new StubSource(latency));
+        bibliometrics.buildIndex();
+        return bibliometrics;
+    }
+}
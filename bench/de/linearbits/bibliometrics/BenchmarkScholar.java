@@ -0,0 +1,108 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Benchmarks for parsing pages of Google Scholar. Pages are generated, or read from the folder given by the
+ * system property <code>pages</code>, in which case saved result pages must be named <code>count*.html</code>
+ * and saved search pages must be named <code>id*.html</code>.
+ *
+ * @author Fabian Prasser
+ */
+class BenchmarkScholar {
+
+    /** Charset*/
+    private static final Charset UTF8  = Charset.forName("UTF-8");
+    /** Number of generated pages of each type*/
+    private static final int     PAGES = 100;
+
+    /**
+     * Returns all benchmarks
+     * @return
+     * @throws IOException
+     */
+    static List<Benchmark> getBenchmarks() throws IOException {
+
+        final List<byte[]> counts = getPages("count");
+        final List<byte[]> ids = getPages("id");
+        List<Benchmark> result = new ArrayList<Benchmark>();
+
+        // Extracts citation counts
+        result.add(new Benchmark("scholar.count", counts.size()) {
+            @Override
+            long run() throws IOException {
+                long result = 0;
+                for (byte[] page : counts) {
+                    ReaderGoogleScholar.CountReader reader = new ReaderGoogleScholar.CountReader();
+                    reader.parse(getSource(page));
+                    result += reader.getCount() == null ? 0 : reader.getCount().length();
+                }
+                return result;
+            }
+        });
+
+        // Extracts ids
+        result.add(new Benchmark("scholar.id", ids.size()) {
+            @Override
+            long run() throws IOException {
+                long result = 0;
+                for (byte[] page : ids) {
+                    ReaderGoogleScholar.IDReader reader = new ReaderGoogleScholar.IDReader();
+                    reader.parse(getSource(page));
+                    result += reader.getId() == null ? 0 : reader.getId().length();
+                }
+                return result;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns the saved pages with the given prefix or, if there are none, generated pages
+     * @param prefix
+     * @return
+     * @throws IOException
+     */
+    private static List<byte[]> getPages(String prefix) throws IOException {
+        List<String> pages = Fixtures.getSavedPages(prefix);
+        if (pages == null) {
+            pages = new ArrayList<String>();
+            for (int i = 0; i < PAGES; i++) {
+                pages.add(prefix.equals("count") ? Fixtures.getCountPage(i * 997, i) : Fixtures.getIdPage(String.valueOf(4000000000L + i), i));
+            }
+        }
+        List<byte[]> result = new ArrayList<byte[]>();
+        for (String page : pages) {
+            result.add(page.getBytes(UTF8));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a source for the given page, which is decoded while it is parsed, as in {@link HTTPClient}
+     * @param page
+     * @return
+     */
+    private static InputSource getSource(byte[] page) {
+        return new InputSource(new InputStreamReader(new ByteArrayInputStream(page), UTF8));
+    }
+}
@@ -0,0 +1,166 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks, whose names match one of the regular expressions given as arguments, or all
+ * benchmarks. Each benchmark is run for a number of warmup iterations, followed by a number of measured
+ * iterations of a fixed duration, and the average time per operation is reported. The fixtures and the
+ * caches are written to a folder in the temporary directory, see {@link Fixtures}. The benchmarks are
+ * compiled and run from the root of the project with:<br>
+ * <br>
+ * <code>javac -cp lib/tagsoup-1.2.1.jar -d bench-bin src/de/linearbits/bibliometrics/*.java bench/de/linearbits/bibliometrics/*.java</code><br>
+ * <code>java -cp bench-bin:lib/tagsoup-1.2.1.jar de.linearbits.bibliometrics.Benchmarks [regex...]</code><br>
+ * <br>
+ * The following system properties are supported:<br>
+ * <br>
+ * - <code>warmup</code>: number of warmup iterations, defaults to 3<br>
+ * - <code>iterations</code>: number of measured iterations, defaults to 5<br>
+ * - <code>time</code>: duration of an iteration in milliseconds, defaults to 1000<br>
+ * - <code>records</code>: number of records in the generated DBLP dump, defaults to 100000<br>
+ * - <code>sizes</code>: numbers of entries in the cache, defaults to 10000,1000000,10000000<br>
+ * - <code>latency</code>: latency of the stubbed source of citations in milliseconds, defaults to 0<br>
+ * - <code>pages</code>: folder with saved pages of Google Scholar, see {@link BenchmarkScholar}<br>
+ *
+ * @author Fabian Prasser
+ */
+public class Benchmarks {
+
+    /** Prevents that results are eliminated*/
+    private static volatile long sink = 0;
+
+    /**
+     * Main entry point
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        // Start with empty caches
+        Fixtures.DATA.mkdirs();
+        Fixtures.deleteCache();
+
+        // Large dumps exceed the default limit of the JDK for expanding entities, as does DBLP itself
+        if (System.getProperty("jdk.xml.entityExpansionLimit") == null) {
+            System.setProperty("jdk.xml.entityExpansionLimit", "0");
+        }
+
+        int warmup = Integer.getInteger("warmup", 3);
+        int iterations = Integer.getInteger("iterations", 5);
+        long time = Long.getLong("time", 1000L);
+        int records = Integer.getInteger("records", 100000);
+        long latency = Long.getLong("latency", 0L);
+        String[] values = System.getProperty("sizes", "10000,1000000,10000000").split(",");
+        int[] sizes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            sizes[i] = Integer.parseInt(values[i].trim());
+        }
+
+        // Collect
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.addAll(BenchmarkDBLP.getBenchmarks(records));
+        benchmarks.addAll(BenchmarkCache.getBenchmarks(sizes));
+        benchmarks.addAll(BenchmarkScholar.getBenchmarks());
+        benchmarks.addAll(BenchmarkImpactFactor.getBenchmarks(records, latency));
+
+        // Run
+        System.out.println(String.format(Locale.US, "%-28s %6s %14s %12s  %s", "Benchmark", "Cnt", "Score", "Error", "Units"));
+        for (Benchmark benchmark : benchmarks) {
+            if (isSelected(benchmark, args)) {
+                double[] scores = run(benchmark, warmup, iterations, time);
+                double mean = 0d;
+                for (double score : scores) {
+                    mean += score / scores.length;
+                }
+                double variance = 0d;
+                for (double score : scores) {
+                    variance += (score - mean) * (score - mean) / Math.max(1, scores.length - 1);
+                }
+                System.out.println(String.format(Locale.US, "%-28s %6d %14.3f +- %10.3f  us/op", benchmark.getName(), scores.length, mean, Math.sqrt(variance)));
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given benchmark has been selected
+     * @param benchmark
+     * @param patterns
+     * @return
+     */
+    private static boolean isSelected(Benchmark benchmark, String[] patterns) {
+        if (patterns.length == 0) {
+            return true;
+        }
+        for (String pattern : patterns) {
+            if (Pattern.compile(pattern).matcher(benchmark.getName()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Performs one iteration. Returns the average time per operation in microseconds.
+     * @param benchmark
+     * @param time
+     * @return
+     * @throws IOException
+     */
+    private static double measure(Benchmark benchmark, long time) throws IOException {
+        long elapsed = 0;
+        long invocations = 0;
+        long result = 0;
+        long end = System.nanoTime() + time * 1000000L;
+        do {
+            benchmark.prepare();
+            long start = System.nanoTime();
+            result += benchmark.run();
+            elapsed += System.nanoTime() - start;
+            benchmark.finish();
+            invocations++;
+        } while (System.nanoTime() < end);
+        sink += result;
+        return (double) elapsed / 1000d / (double) (invocations * benchmark.getOperations());
+    }
+
+    /**
+     * Runs the given benchmark. Returns the score of each measured iteration.
+     * @param benchmark
+     * @param warmup
+     * @param iterations
+     * @param time
+     * @return
+     * @throws IOException
+     */
+    private static double[] run(Benchmark benchmark, int warmup, int iterations, long time) throws IOException {
+        System.gc();
+        benchmark.setup();
+        try {
+            for (int i = 0; i < warmup; i++) {
+                measure(benchmark, time);
+            }
+            double[] scores = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                scores[i] = measure(benchmark, time);
+            }
+            return scores;
+        } finally {
+            benchmark.teardown();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates the data used by the benchmarks. Everything is written to the folder
+ * <code>bibliometrics-benchmarks</code> in the temporary directory, which is also used for the caches.
+ * Generated dumps are kept between runs.
+ *
+ * @author Fabian Prasser
+ */
+class Fixtures {
+
+    /** Folder*/
+    static final File             DATA    = new File(System.getProperty("java.io.tmpdir"), "bibliometrics-benchmarks");
+    /** First year of publications*/
+    static final int              FIRST   = 2000;
+    /** Last year of publications*/
+    static final int              LAST    = 2015;
+    /** Number of journals and of conferences*/
+    static final int              VENUES  = 20;
+
+    /** Charset*/
+    private static final Charset  UTF8    = Charset.forName("UTF-8");
+    /** Number of years per title in the cache*/
+    private static final int      YEARS   = 10;
+    /** Authors*/
+    private static final String[] AUTHORS = { "Prasser", "Kohlmayer", "Kemper", "Neumann", "Kuhn", "Eder", "Leis", "Dr&ouml;ge", "M&uuml;ller", "Gro&szlig;" };
+    /** Topics*/
+    private static final String[] TOPICS  = { "data privacy", "query processing", "d&auml;ta <i>anonymization</i>", "main-memory databases", "H<sub>2</sub>O", "clinical research" };
+
+    /**
+     * Returns the title of the given entry of the cache
+     * @param entry
+     * @return
+     */
+    static String getCachedTitle(int entry) {
+        return "Cached article " + entry + " of the benchmark.";
+    }
+
+    /**
+     * Returns the name of the given conference
+     * @param venue
+     * @return
+     */
+    static String getConference(int venue) {
+        return "Conference " + venue;
+    }
+
+    /**
+     * Returns a result page of Google Scholar, which contains the given number of citations
+     * @param count
+     * @param seed
+     * @return
+     */
+    static String getCountPage(int count, int seed) {
+        StringBuilder builder = new StringBuilder();
+        appendHeader(builder);
+        builder.append("<div id=\"gs_ab_md\">Ungef&auml;hr ");
+        builder.append(String.format(Locale.GERMANY, "%,d", count));
+        builder.append(" Ergebnisse (<b>0,04</b> Sek.)</div>\n");
+        appendResults(builder, seed);
+        appendFooter(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Returns the generated dump with the given number of records. The dump and the DTD are written,
+     * if they do not exist.
+     * @param records
+     * @return
+     * @throws IOException
+     */
+    static File getDBLP(int records) throws IOException {
+
+        DATA.mkdirs();
+        write(new File(DATA, "dblp.dtd"), getDTD());
+        File file = new File(DATA, "bench-" + records + ".xml");
+        if (file.exists()) {
+            return file;
+        }
+
+        Random random = new Random(0);
+        Writer writer = getWriter(new File(DATA, file.getName() + ".tmp"));
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<!DOCTYPE dblp SYSTEM \"dblp.dtd\">\n");
+            writer.write("<dblp>\n");
+            for (int i = 0; i < records; i++) {
+                boolean journal = (i & 1) == 0;
+                String type = journal ? "article" : "inproceedings";
+                int venue = random.nextInt(VENUES);
+                int year = FIRST + random.nextInt(LAST - FIRST + 1);
+                writer.write("<" + type + " key=\"" + (journal ? "journals/b/" : "conf/b/") + i + "\" mdate=\"2015-01-01\">");
+                for (int j = random.nextInt(4); j >= 0; j--) {
+                    writer.write("<author>" + AUTHORS[random.nextInt(AUTHORS.length)] + " " + random.nextInt(1000) + "</author>");
+                }
+                writer.write("<title>Article " + i + " on " + TOPICS[random.nextInt(TOPICS.length)] + ".</title>");
+                writer.write("<pages>" + (i % 100) + "-" + (i % 100 + 10) + "</pages>");
+                writer.write("<year>" + year + "</year>");
+                if (journal) {
+                    writer.write("<volume>" + (year - FIRST + 1) + "</volume>");
+                    writer.write("<journal>" + getJournal(venue) + "</journal>");
+                } else {
+                    writer.write("<booktitle>" + getConference(venue) + "</booktitle>");
+                }
+                writer.write("<ee>http://dx.doi.org/10.1000/" + i + "</ee>");
+                writer.write("</" + type + ">\n");
+                if (i % 50 == 0) {
+                    writer.write("<www key=\"homepages/b/" + i + "\" mdate=\"2015-01-01\"><author>" + AUTHORS[i % AUTHORS.length] + " " + i + "</author><title>Home Page</title></www>\n");
+                }
+            }
+            writer.write("</dblp>\n");
+        } finally {
+            writer.close();
+        }
+        if (!new File(DATA, file.getName() + ".tmp").renameTo(file)) {
+            throw new IOException("Cannot write: " + file);
+        }
+        return file;
+    }
+
+    /**
+     * Returns a result page of Google Scholar, in which the first result has the given id
+     * @param id
+     * @param seed
+     * @return
+     */
+    static String getIdPage(String id, int seed) {
+        StringBuilder builder = new StringBuilder();
+        appendHeader(builder);
+        builder.append("<div id=\"gs_ab_md\"></div>\n");
+        appendResult(builder, id, seed);
+        appendResults(builder, seed + 1);
+        appendFooter(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Returns the name of the given journal
+     * @param venue
+     * @return
+     */
+    static String getJournal(int venue) {
+        return "Journal " + venue;
+    }
+
+    /**
+     * Returns the pages in the folder given by the system property <code>pages</code>, whose names start with
+     * the given prefix, or null if the property is not set
+     * @param prefix
+     * @return
+     * @throws IOException
+     */
+    static List<String> getSavedPages(String prefix) throws IOException {
+        String folder = System.getProperty("pages");
+        if (folder == null) {
+            return null;
+        }
+        File[] files = new File(folder).listFiles();
+        if (files == null) {
+            throw new IOException("Not a folder: " + folder);
+        }
+        Arrays.sort(files);
+        List<String> result = new ArrayList<String>();
+        for (File file : files) {
+            if (file.getName().startsWith(prefix) && file.getName().endsWith(".html")) {
+                result.add(read(file));
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IOException("No pages starting with '" + prefix + "' in: " + folder);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the records of a cache with the given number of entries and removes all other files of the
+     * cache, so that it is converted when it is opened next
+     * @param entries
+     * @throws IOException
+     */
+    static void writeCache(int entries) throws IOException {
+        deleteCache();
+        Random random = new Random(0);
+        Writer writer = getWriter(new File(DATA, "cache.csv"));
+        try {
+            for (int i = 0; i < entries; i++) {
+                writer.write(getCachedTitle(i / YEARS) + ";" + (LAST - i % YEARS) + ";" + random.nextInt(100) + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Deletes all files of the cache of citations and of the cache of ids
+     * @throws IOException
+     */
+    static void deleteCache() throws IOException {
+        for (String name : new String[] { "cache.csv", "cache.bin", "cache.log", "cache.log.1", "ids.csv" }) {
+            File file = new File(DATA, name);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Cannot delete: " + file);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of titles in a cache with the given number of entries
+     * @param entries
+     * @return
+     */
+    static int getCachedTitles(int entries) {
+        return (entries + YEARS - 1) / YEARS;
+    }
+
+    /**
+     * Appends the footer of a page
+     * @param builder
+     */
+    private static void appendFooter(StringBuilder builder) {
+        builder.append("</div>\n<div id=\"gs_n\"><table><tr>");
+        for (int i = 1; i <= 10; i++) {
+            builder.append("<td><a href=\"/scholar?start=").append(i * 10).append("&amp;hl=de\">").append(i).append("</a></td>");
+        }
+        builder.append("</tr></table></div>\n<div id=\"gs_ftr\"><a href=\"/intl/de/scholar/about.html\">&Uuml;ber Google Scholar</a></div>\n</body></html>\n");
+    }
+
+    /**
+     * Appends the header of a page, which is dominated by scripts and styles, as on Google Scholar
+     * @param builder
+     */
+    private static void appendHeader(StringBuilder builder) {
+        builder.append("<!doctype html><html><head><meta http-equiv=\"Content-Type\" content=\"text/html;charset=UTF-8\"><title>Google Scholar</title>\n<style>");
+        for (int i = 0; i < 300; i++) {
+            builder.append("#gs_s").append(i).append("{position:relative;margin:0 ").append(i % 16).append("px;font-size:13px;line-height:1.24}");
+        }
+        builder.append("</style>\n<script>");
+        for (int i = 0; i < 300; i++) {
+            builder.append("var gs_v").append(i).append("=function(a,b){return a<b&&b>").append(i).append("?a:b};");
+        }
+        builder.append("</script></head>\n<body><div id=\"gs_top\">\n");
+        builder.append("<form id=\"gs_hdr_frm\" action=\"/scholar\"><input type=\"text\" name=\"q\" value=\"\"><button type=\"submit\">Suche</button></form>\n");
+        builder.append("<div id=\"gs_bdy\"><div id=\"gs_res_ccl\">\n");
+    }
+
+    /**
+     * Appends a result, which is cited by others
+     * @param builder
+     * @param id
+     * @param seed
+     */
+    private static void appendResult(StringBuilder builder, String id, int seed) {
+        builder.append("<div class=\"gs_r gs_or gs_scl\"><div class=\"gs_ri\"><h3 class=\"gs_rt\"><a href=\"http://dx.doi.org/10.1000/");
+        builder.append(seed).append("\">Article ").append(seed).append(" on <b>data privacy</b></a></h3>");
+        builder.append("<div class=\"gs_a\">F Prasser, F Kohlmayer, A Kemper - Journal ").append(seed % VENUES).append(", 2014 - Springer</div>");
+        builder.append("<div class=\"gs_rs\">");
+        for (int i = 0; i < 8; i++) {
+            builder.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ");
+        }
+        builder.append("&hellip;</div><div class=\"gs_fl\"><a href=\"/scholar?cites=").append(id);
+        builder.append("&amp;as_sdt=2005&amp;sciodt=0,5&amp;hl=de\">Zitiert von: ").append(seed % 100);
+        builder.append("</a> <a href=\"/scholar?q=related:").append(id).append(":scholar.google.com/&amp;hl=de\">&Auml;hnliche Artikel</a>");
+        builder.append(" <a href=\"/scholar?cluster=").append(id).append("&amp;hl=de\">Alle 3 Versionen</a></div></div></div>\n");
+    }
+
+    /**
+     * Appends ten results
+     * @param builder
+     * @param seed
+     */
+    private static void appendResults(StringBuilder builder, int seed) {
+        for (int i = 0; i < 10; i++) {
+            appendResult(builder, String.valueOf(1000000000L + seed * 10L + i), seed + i);
+        }
+    }
+
+    /**
+     * Returns the DTD
+     * @return
+     */
+    private static String getDTD() {
+        String fields = "(author|title|pages|year|volume|journal|booktitle|ee)*";
+        StringBuilder builder = new StringBuilder();
+        builder.append("<!ELEMENT dblp (article|inproceedings|www)*>\n");
+        for (String type : new String[] { "article", "inproceedings", "www" }) {
+            builder.append("<!ELEMENT ").append(type).append(" ").append(fields).append(">\n");
+            builder.append("<!ATTLIST ").append(type).append(" key CDATA #REQUIRED mdate CDATA #IMPLIED>\n");
+        }
+        for (String field : new String[] { "author", "pages", "year", "volume", "journal", "booktitle", "ee", "i", "sub" }) {
+            builder.append("<!ELEMENT ").append(field).append(" (#PCDATA)>\n");
+        }
+        builder.append("<!ELEMENT title (#PCDATA|i|sub)*>\n");
+        builder.append("<!ENTITY auml \"&#228;\">\n<!ENTITY ouml \"&#246;\">\n<!ENTITY uuml \"&#252;\">\n<!ENTITY szlig \"&#223;\">\n");
+        return builder.toString();
+    }
+
+    /**
+     * Returns a buffered writer for the given file
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private static Writer getWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8), 1 << 16);
+    }
+
+    /**
+     * Reads the given file
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private static String read(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 13];
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                output.write(buffer, 0, length);
+            }
+            return new String(output.toByteArray(), UTF8);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes the given content to the given file
+     * @param file
+     * @param content
+     * @throws IOException
+     */
+    private static void write(File file, String content) throws IOException {
+        Writer writer = getWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
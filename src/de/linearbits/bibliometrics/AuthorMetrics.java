@@ -0,0 +1,103 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+/**
+ * Aggregated citation metrics of an author in a given year
+ * @author Fabian Prasser
+ */
+public class AuthorMetrics {
+
+    /** Author*/
+    private final ElementAuthor author;
+    /** Year*/
+    private final int           year;
+    /** Number of publications up to the year*/
+    private final int           publications;
+    /** Citations up to the year*/
+    private final int           citations;
+    /** H-index*/
+    private final int           hIndex;
+    /** 2-year impact*/
+    private final double        impact;
+
+    /**
+     * Creates a new instance
+     * @param author
+     * @param year
+     * @param publications
+     * @param citations
+     * @param hIndex
+     * @param impact
+     */
+    AuthorMetrics(ElementAuthor author, int year, int publications, int citations, int hIndex, double impact) {
+        this.author = author;
+        this.year = year;
+        this.publications = publications;
+        this.citations = citations;
+        this.hIndex = hIndex;
+        this.impact = impact;
+    }
+
+    /**
+     * @return the author
+     */
+    public ElementAuthor getAuthor() {
+        return author;
+    }
+
+    /**
+     * Returns the total number of citations received by publications of the author up to and including the year
+     * @return
+     */
+    public int getCitations() {
+        return citations;
+    }
+
+    /**
+     * Returns the h-index of the author, based on the citations received up to and including the year
+     * @return
+     */
+    public int getHIndex() {
+        return hIndex;
+    }
+
+    /**
+     * Returns the 2-year impact of the author, i.e. the number of citations received in the year by publications
+     * of the two preceding years, divided by the number of these publications
+     * @return
+     */
+    public double getImpact() {
+        return impact;
+    }
+
+    /**
+     * Returns the number of publications of the author up to and including the year
+     * @return
+     */
+    public int getPublications() {
+        return publications;
+    }
+
+    /**
+     * @return the year
+     */
+    public int getYear() {
+        return year;
+    }
+
+    @Override
+    public String toString() {
+        return author + " (" + year + "): publications=" + publications + ", citations=" + citations +
+               ", h-index=" + hIndex + ", impact=" + impact;
+    }
+}
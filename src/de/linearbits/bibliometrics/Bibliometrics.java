@@ -11,28 +11,184 @@
  */
 package de.linearbits.bibliometrics;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 /**
- * Main class giving access to the functionality implemented by this library
+ * Main class giving access to the functionality implemented by this library. Queries and
+ * citation lookups may be issued from multiple threads concurrently.<br>
+ * <br>
+ * Statistics about the time spent in each {@link Stage} and about the cache and requests can be
+ * collected, see {@link #setStatisticsEnabled(boolean)}. They are also published via JMX with the
+ * name <code>de.linearbits.bibliometrics:type=Statistics,instance=&lt;number&gt;</code>.
  * 
  * @author Fabian Prasser
  */
-public class Bibliometrics {
+public class Bibliometrics implements Closeable {
+
+    /** Number of instances, used to name their MBeans*/
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
 
     /** A cache for citations*/
-    private ReaderCache cache;
+    private ReaderCache      cache;
+    /** A cache for ids of titles on Google Scholar*/
+    private CacheIds         ids;
+    /** The reader for citations*/
+    private ReaderCitations  scholar;
+    /** The reader for DBLP*/
+    private ReaderDBLP       dblp;
+    /** Titles in the caches*/
+    private final Dictionary strings = new Dictionary();
+    /** Statistics*/
+    private final Metrics    metrics = new Metrics();
+    /** Name of the MBean*/
+    private final ObjectName name;
     
     /**
-     * Creates a new instance
+     * Creates a new instance, which reads DBLP from <code>data/dblp.xml</code> or, if this file
+     * does not exist, from <code>data/dblp.xml.gz</code>
      * @throws IOException
      */
     public Bibliometrics() throws IOException {
-        this.cache = new ReaderCache();
+        this(new File("data/dblp.xml").exists() || !new File("data/dblp.xml.gz").exists() ? new File("data/dblp.xml")
+                                                                                         : new File("data/dblp.xml.gz"));
+    }
+
+    /**
+     * Creates a new instance, which reads DBLP from the given file. If its name ends with ".gz", the file
+     * is expected to be gzip-compressed. The DTD must be located in the same directory. The caches are
+     * located in the folder <code>data</code>.
+     * @param dblp
+     * @throws IOException
+     */
+    public Bibliometrics(File dblp) throws IOException {
+        this(dblp, new File("data"));
+    }
+
+    /**
+     * Creates a new instance, which reads DBLP from the given file and stores the caches of citations
+     * and of ids on Google Scholar in the given folder, which is created if needed. If the name of the
+     * dump ends with ".gz", the file is expected to be gzip-compressed. The DTD must be located in the
+     * same directory.
+     * @param dblp
+     * @param folder
+     * @throws IOException
+     */
+    public Bibliometrics(File dblp, File folder) throws IOException {
+        this.cache = new ReaderCache(folder, strings, metrics);
+
+        // Release the cache, if any further step fails
+        boolean success = false;
+        try {
+            this.ids = new CacheIds(folder, strings);
+            this.scholar = new ReaderCitations(cache, ids, ReaderGoogleScholar.HOST, metrics);
+            this.dblp = new ReaderDBLP(dblp, metrics);
+            this.name = new ObjectName("de.linearbits.bibliometrics:type=Statistics,instance=" + INSTANCES.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(metrics, StatisticsMXBean.class, true), name);
+            success = true;
+        } catch (JMException e) {
+            throw new IOException("Error registering MBean", e);
+        } finally {
+            if (!success) {
+                try {
+                    cache.close();
+                } catch (IOException e) {
+                    // Ignore, the original error is reported
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the index over the DBLP dump, if it does not exist or if the dump has changed.
+     * This is done implicitly by all methods that query DBLP, but may take a while.
+     * @throws IOException
+     */
+    public void buildIndex() throws IOException {
+        dblp.buildIndex();
+    }
+
+    /**
+     * Writes all pending changes to the cache of citations and releases all resources. The instance
+     * must not be used afterwards. Pending changes are also written when the JVM shuts down.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+
+        // The cache is always closed, and the MBean is unregistered last
+        try {
+            scholar.close();
+            ids.close();
+        } finally {
+            try {
+                cache.close();
+            } finally {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                try {
+                    if (server.isRegistered(name)) {
+                        server.unregisterMBean(name);
+                    }
+                } catch (JMException e) {
+                    throw new IOException("Error unregistering MBean", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns all articles that appeared in the given journals and conferences in the given years. Derived from DBLP.
+     * All venues and years are collected in a single pass.
+     * @param venues Instances of {@link ElementJournal} or {@link ElementConference}
+     * @param years
+     * @return A map from venue to year to articles
+     * @throws IOException
+     */
+    public Map<Element, Map<Integer, List<ElementArticle>>> getArticles(Collection<? extends Element> venues, Collection<Integer> years) throws IOException {
+
+        // Prepare
+        List<QueryDBLP> queries = new ArrayList<QueryDBLP>();
+        for (Element venue : venues) {
+            for (int year : years) {
+                checkYear(year);
+                queries.add(getQuery(venue, year));
+            }
+        }
+
+        // Collect
+        dblp.collect(queries);
+
+        // Create result
+        Map<Element, Map<Integer, List<ElementArticle>>> result = new LinkedHashMap<Element, Map<Integer, List<ElementArticle>>>();
+        Iterator<QueryDBLP> iter = queries.iterator();
+        for (Element venue : venues) {
+            Map<Integer, List<ElementArticle>> articles = new LinkedHashMap<Integer, List<ElementArticle>>();
+            for (int year : years) {
+                articles.put(year, getElements(iter.next().getResult(), ElementArticle.class));
+            }
+            result.put(venue, articles);
+        }
+        return result;
     }
 
     /**
@@ -69,6 +225,42 @@ public class Bibliometrics {
         return getMatchingValuesInTag("author", author, ElementAuthor.class);
     }
 
+    /**
+     * Returns a list of all available authors whose names start with the given prefix. Derived from DBLP.
+     * @param prefix
+     * @return
+     * @throws IOException
+     */
+    public List<ElementAuthor> getAuthorsWithPrefix(String prefix) throws IOException {
+        return getValuesInTagWithPrefix("author", prefix, ElementAuthor.class);
+    }
+
+    /**
+     * Returns statistics about the in-memory tier of the cache of citations
+     * @return
+     */
+    public CacheStatistics getCacheStatistics() {
+        return cache.getStatistics();
+    }
+
+    /**
+     * Returns the number of requests to Google Scholar that have been saved, because the same
+     * citation count was already being fetched by another thread
+     * @return
+     */
+    public long getCoalescedFetches() {
+        return scholar.getCoalesced();
+    }
+
+    /**
+     * Returns a snapshot of the statistics collected so far. While computations are running, the values
+     * are read one after the other, so that they may not be exactly consistent with each other.
+     * @return
+     */
+    public Statistics getStatistics() {
+        return metrics.getStatistics();
+    }
+
     /**
      * Returns the citation count of a given publication in a given year. Derived from DBLP.
      * @param article
@@ -79,28 +271,26 @@ public class Bibliometrics {
     public int getCitationCount(ElementArticle article, int year) throws IOException {
 
         checkYear(year);
-        if (cache.contains(article.getValue(), Integer.valueOf(year))) {
-            return cache.get(article.getValue(), Integer.valueOf(year));
-        }
-        
-        ReaderGoogleScholar gs = new ReaderGoogleScholar();
-        
-        // If we did not find an id, there are no citations
-        String id = gs.getId(article.getValue());
-        if (id == null) {
-            cache.put(article.getValue(), Integer.valueOf(year), 0);
-            return 0;
-        }
-        
-        // Retrieve and convert
-        String count = gs.getCitationCount(id, String.valueOf(year), String.valueOf(year));
-        try {
-            int icount = Integer.valueOf(count);
-            cache.put(article.getValue(), year, icount);
-            return icount;
-        } catch (Exception e) {
-            throw new IOException("Error parsing Google Scholar. Locked out?");
+        return scholar.get(article, year);
+    }
+
+    /**
+     * Returns the citation counts of a given publication in each year of a given span. Counts that are not
+     * cached are fetched as a histogram, which needs far fewer requests than fetching each year.
+     * @param article
+     * @param from First year
+     * @param to Last year
+     * @return Count for each year
+     * @throws IOException
+     */
+    public int[] getCitationCounts(ElementArticle article, int from, int to) throws IOException {
+
+        checkYear(from);
+        checkYear(to);
+        if (from > to) {
+            throw new IllegalArgumentException("Invalid span of years: " + from + "-" + to);
         }
+        return scholar.get(article, from, to);
     }
 
     /**
@@ -112,6 +302,16 @@ public class Bibliometrics {
     public List<ElementConference> getConferences(String conference) throws IOException {
         return getMatchingValuesInTag("booktitle", conference, ElementConference.class);
     }
+
+    /**
+     * Returns a list of all available conferences whose names start with the given prefix. Derived from DBLP.
+     * @param prefix
+     * @return
+     * @throws IOException
+     */
+    public List<ElementConference> getConferencesWithPrefix(String prefix) throws IOException {
+        return getValuesInTagWithPrefix("booktitle", prefix, ElementConference.class);
+    }
     
     /**
      * Returns the impact factor of a given conference in a given year. Based on Google Scholar.
@@ -121,23 +321,27 @@ public class Bibliometrics {
      * @throws IOException
      */
     public double getImpactFactor(ElementConference conference, int year) throws IOException {
+        long start = metrics.start();
+        try {
+            checkYear(year);
+            int year1 = year - 2;
+            int year2 = year - 1;
 
-        checkYear(year);
-        int year1 = year - 2;
-        int year2 = year - 1;
-
-        List<ElementArticle> titles1 = this.getArticlesInConference(conference, year1);
-        List<ElementArticle> titles2 = this.getArticlesInConference(conference, year2);
+            // Both years are collected in one pass
+            List<ElementArticle> titles1 = this.getArticles(conference, year1, year2);
 
-        titles1.addAll(titles2);
+            // Citations are fetched concurrently
+            int[] years = new int[titles1.size()];
+            Arrays.fill(years, year);
+            int citations = 0;
+            for (int count : scholar.get(titles1, years)) {
+                citations += count;
+            }
 
-        int citations = 0;
-        for (ElementArticle title : titles1) {
-            citations += this.getCitationCount(title, year);
-            this.persist();
+            return (double) citations / (double) titles1.size();
+        } finally {
+            metrics.stop(Stage.IMPACT_FACTOR, start);
         }
-
-        return (double) citations / (double) titles1.size();
     }
 
     /**
@@ -148,24 +352,98 @@ public class Bibliometrics {
      * @throws IOException
      */
     public double getImpactFactor(ElementJournal journal, int year) throws IOException {
+        long start = metrics.start();
+        try {
+            checkYear(year);
 
-        checkYear(year);
-
-        int year1 = year - 2;
-        int year2 = year - 1;
+            int year1 = year - 2;
+            int year2 = year - 1;
 
-        List<ElementArticle> titles1 = this.getArticlesInJournal(journal, year1);
-        List<ElementArticle> titles2 = this.getArticlesInJournal(journal, year2);
+            // Both years are collected in one pass
+            List<ElementArticle> titles1 = this.getArticles(journal, year1, year2);
 
-        titles1.addAll(titles2);
+            // Citations are fetched concurrently
+            int[] years = new int[titles1.size()];
+            Arrays.fill(years, year);
+            int citations = 0;
+            for (int count : scholar.get(titles1, years)) {
+                citations += count;
+            }
 
-        int citations = 0;
-        for (ElementArticle title : titles1) {
-            citations += this.getCitationCount(title, year);
-            this.persist();
+            return (double) citations / (double) titles1.size();
+        } finally {
+            metrics.stop(Stage.IMPACT_FACTOR, start);
         }
+    }
+
+    /**
+     * Returns the impact factors of the given journals and conferences in the given years. Based on Google
+     * Scholar. The articles of all venues in all relevant years are collected in a single pass, and the
+     * citation count of an article in a year is fetched only once, even if it is needed for multiple impact
+     * factors, e.g. for an article that appeared in both years of two overlapping windows. All counts are
+     * fetched concurrently.
+     * @param venues Instances of {@link ElementJournal} or {@link ElementConference}
+     * @param years
+     * @return A map from venue to year to impact factor
+     * @throws IOException
+     */
+    public Map<Element, Map<Integer, Double>> getImpactFactors(Collection<? extends Element> venues, Collection<Integer> years) throws IOException {
+        long start = metrics.start();
+        try {
+
+            // Collect the articles of all venues in all windows in one pass
+            Set<Integer> targets = new TreeSet<Integer>();
+            Set<Integer> published = new TreeSet<Integer>();
+            for (int year : years) {
+                checkYear(year);
+                targets.add(year);
+                published.add(year - 2);
+                published.add(year - 1);
+            }
+            Map<Element, Map<Integer, List<ElementArticle>>> articles = getArticles(venues, published);
 
-        return (double) citations / (double) titles1.size();
+            // Each article is requested once for each year in which its citations are needed
+            Map<ElementArticle, Map<Integer, Integer>> positions = new HashMap<ElementArticle, Map<Integer, Integer>>();
+            List<ElementArticle> requests = new ArrayList<ElementArticle>();
+            IntList counted = new IntList();
+            for (Map<Integer, List<ElementArticle>> venue : articles.values()) {
+                for (int year : targets) {
+                    for (ElementArticle article : getWindow(venue, year)) {
+                        Map<Integer, Integer> position = positions.get(article);
+                        if (position == null) {
+                            position = new HashMap<Integer, Integer>();
+                            positions.put(article, position);
+                        }
+                        if (!position.containsKey(year)) {
+                            position.put(year, requests.size());
+                            requests.add(article);
+                            counted.add(year);
+                        }
+                    }
+                }
+            }
+
+            // Fetch all counts. Multiple years of an article are fetched together.
+            int[] counts = scholar.get(requests, counted.toArray());
+
+            // Create result
+            Map<Element, Map<Integer, Double>> result = new LinkedHashMap<Element, Map<Integer, Double>>();
+            for (Entry<Element, Map<Integer, List<ElementArticle>>> venue : articles.entrySet()) {
+                Map<Integer, Double> factors = new LinkedHashMap<Integer, Double>();
+                for (int year : targets) {
+                    List<ElementArticle> window = getWindow(venue.getValue(), year);
+                    int citations = 0;
+                    for (ElementArticle article : window) {
+                        citations += counts[positions.get(article).get(year)];
+                    }
+                    factors.put(year, (double) citations / (double) window.size());
+                }
+                result.put(venue.getKey(), factors);
+            }
+            return result;
+        } finally {
+            metrics.stop(Stage.IMPACT_FACTOR, start);
+        }
     }
 
     /**
@@ -179,10 +457,249 @@ public class Bibliometrics {
     }
 
     /**
-     * Persists all data stored in the cache
+     * Returns a list of all available journals whose names start with the given prefix. Derived from DBLP.
+     * @param prefix
+     * @return
+     * @throws IOException
+     */
+    public List<ElementJournal> getJournalsWithPrefix(String prefix) throws IOException {
+        return getValuesInTagWithPrefix("journal", prefix, ElementJournal.class);
+    }
+
+    /**
+     * Returns citation metrics of the given authors in the given year. Publications of all authors are
+     * collected in a single pass. Citations are derived from Google Scholar. Publications that appeared
+     * under the same title in multiple years are counted once, in the earliest year.
+     * @param authors
+     * @param year
+     * @return
+     * @throws IOException
+     */
+    public Map<ElementAuthor, AuthorMetrics> getMetrics(Collection<ElementAuthor> authors, int year) throws IOException {
+        checkYear(year);
+        Map<ElementAuthor, AuthorMetrics> result = new LinkedHashMap<ElementAuthor, AuthorMetrics>();
+        for (Entry<ElementAuthor, Map<Integer, List<ElementArticle>>> entry : getPublications(authors).entrySet()) {
+            result.put(entry.getKey(), getMetrics(entry.getKey(), entry.getValue(), year));
+        }
+        return result;
+    }
+
+    /**
+     * Returns citation metrics of the given author in the given year. Citations are derived from Google Scholar.
+     * @param author
+     * @param year
+     * @return
+     * @throws IOException
+     */
+    public AuthorMetrics getMetrics(ElementAuthor author, int year) throws IOException {
+        return getMetrics(Collections.singletonList(author), year).get(author);
+    }
+
+    /**
+     * Returns the publications of the given authors, by year in ascending order. All authors are collected
+     * in a single pass. Derived from DBLP.
+     * @param authors
+     * @return A map from author to year to publications
+     * @throws IOException
+     */
+    public Map<ElementAuthor, Map<Integer, List<ElementArticle>>> getPublications(Collection<ElementAuthor> authors) throws IOException {
+
+        // Collect
+        List<QueryAuthor> queries = new ArrayList<QueryAuthor>();
+        for (ElementAuthor author : authors) {
+            queries.add(new QueryAuthor(author.getValue()));
+        }
+        dblp.collectPublications(queries);
+
+        // Create result
+        Map<ElementAuthor, Map<Integer, List<ElementArticle>>> result = new LinkedHashMap<ElementAuthor, Map<Integer, List<ElementArticle>>>();
+        Iterator<QueryAuthor> iter = queries.iterator();
+        for (ElementAuthor author : authors) {
+            Map<Integer, List<ElementArticle>> publications = new LinkedHashMap<Integer, List<ElementArticle>>();
+            for (Entry<Integer, Set<String>> entry : iter.next().getResult().entrySet()) {
+                publications.put(entry.getKey(), getElements(entry.getValue(), ElementArticle.class));
+            }
+            result.put(author, publications);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the publications of the given author, by year in ascending order. Derived from DBLP.
+     * @param author
+     * @return
+     * @throws IOException
+     */
+    public Map<Integer, List<ElementArticle>> getPublications(ElementAuthor author) throws IOException {
+        return getPublications(Collections.singletonList(author)).get(author);
+    }
+
+    /**
+     * Switches to a newer release of DBLP. Records are compared with the previous release by key and
+     * modification date, and only records that have been added, changed or removed are processed. Cached
+     * citations and ids are invalidated for all titles that have been changed or removed.
+     * @param dblp
+     * @throws IOException
+     */
+    public void refresh(File dblp) throws IOException {
+        for (String title : this.dblp.update(dblp)) {
+            cache.remove(title);
+            ids.remove(title);
+        }
+        ids.persist();
+        cache.persist();
+    }
+
+    /**
+     * Sets the source from which citations are fetched, if they are not cached. Defaults to Google Scholar,
+     * which is also used if the source is null. The number of threads applies to all sources, the other
+     * settings for fetching only apply to Google Scholar.
+     * @param source
+     */
+    public void setCitationSource(CitationSource source) {
+        scholar.setSource(source);
+    }
+
+    /**
+     * Enables or disables collecting statistics, see {@link #getStatistics()}. Disabled by default.
+     * Statistics that have been collected are kept.
+     * @param enabled
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+        metrics.setEnabled(enabled);
+    }
+
+    /**
+     * Fetches citations from Google Scholar and saves all raw responses to the given directory, so that they
+     * can be replayed later. Recording is stopped, if the directory is null.
+     * @param archive
+     * @throws IOException
+     */
+    public void setRecording(File archive) throws IOException {
+        scholar.setRecording(archive);
+    }
+
+    /**
+     * Fetches citations from raw responses of Google Scholar that have been recorded to the given directory,
+     * instead of sending requests. Each response is delayed by the given latency. Replaying is stopped, if the
+     * directory is null. Requests that have not been recorded fail.
+     * @param archive
+     * @param latency In milliseconds
+     * @throws IOException
+     */
+    public void setReplay(File archive, long latency) throws IOException {
+        scholar.setReplay(archive, latency);
+    }
+
+    /**
+     * Sets the maximal number of requests per second that are sent to Google Scholar, or zero for no limit.
+     * The limit applies to all threads. Defaults to zero.
+     * @param rate
+     */
+    public void setFetchRate(double rate) {
+        scholar.setRate(rate);
+    }
+
+    /**
+     * Sets how often a request to Google Scholar is retried, if the connection failed or the server responded
+     * with an error that may be temporary (429, 5xx). The delay before the first retry is doubled for each
+     * further retry. Defaults to two retries after one second.
+     * @param retries
+     * @param backoff In milliseconds
+     */
+    public void setFetchRetries(int retries, long backoff) {
+        scholar.setRetries(retries, backoff);
+    }
+
+    /**
+     * Sets the timeouts for connecting to Google Scholar and for reading a response. Default to four seconds.
+     * @param connect In milliseconds
+     * @param read In milliseconds
+     */
+    public void setFetchTimeouts(int connect, int read) {
+        scholar.setTimeouts(connect, read);
+    }
+
+    /**
+     * Sets the number of threads that fetch citations from Google Scholar, which is also the maximal number
+     * of requests in flight. Defaults to one.
+     * @param threads
+     */
+    public void setFetchThreads(int threads) {
+        scholar.setThreads(threads);
+    }
+
+    /**
+     * Sets the number of cached citations that are kept in memory. Each entry takes about 21 bytes.
+     * Other entries are read from disk when needed. Defaults to 65536.
+     * @param entries
+     */
+    public void setCacheCapacity(int entries) {
+        cache.setCapacity(entries);
+    }
+
+    /**
+     * Sets when changes to the cache of citations are written to disk. Defaults to {@link Durability#BATCHED}.
+     * @param durability
+     * @throws IOException
+     */
+    public void setDurability(Durability durability) throws IOException {
+        cache.setDurability(durability);
+    }
+
+    /**
+     * Sets when changes to the cache of citations are written to disk. In batched mode, changes are written
+     * in the background when the given number of changes has accumulated or after the given interval.
+     * Defaults to {@link Durability#BATCHED} with 1024 changes and one second.
+     * @param durability
+     * @param changes
+     * @param interval in milliseconds
+     * @throws IOException
+     */
+    public void setDurability(Durability durability, int changes, long interval) throws IOException {
+        cache.setDurability(durability, changes, interval);
+    }
+
+    /**
+     * Enables or disables the index over DBLP. If disabled, every query parses the DBLP dump. Enabled by default.
+     * @param enabled
+     */
+    public void setIndexEnabled(boolean enabled) {
+        dblp.setIndexed(enabled);
+    }
+
+    /**
+     * Enables or disables the fast parser for DBLP. The fast parser does not validate the dump against the DTD
+     * and resolves character entities from a precomputed table. Disabled by default.
+     * @param enabled
+     * @throws IOException
+     */
+    public void setFastParserEnabled(boolean enabled) throws IOException {
+        dblp.setFastParser(enabled);
+    }
+
+    /**
+     * Sets the number of threads used for parsing DBLP. If larger than one, the dump is split into chunks
+     * that are parsed concurrently. Defaults to one.
+     * @param threads
+     */
+    public void setParserThreads(int threads) {
+        dblp.setThreads(threads);
+    }
+
+    /**
+     * Resets all statistics
+     */
+    public void resetStatistics() {
+        metrics.reset();
+    }
+
+    /**
+     * Persists all data stored in the cache, according to the configured {@link Durability}
      * @throws IOException
      */
     public void persist() throws IOException {
+        ids.persist();
         cache.persist();
     }
     
@@ -196,6 +713,161 @@ public class Bibliometrics {
         }
     }
 
+    /**
+     * Returns all articles that appeared in the given venue in the given years, collected in one pass
+     * @param venue
+     * @param years
+     * @return
+     * @throws IOException
+     */
+    private List<ElementArticle> getArticles(Element venue, int... years) throws IOException {
+        List<QueryDBLP> queries = new ArrayList<QueryDBLP>();
+        for (int year : years) {
+            queries.add(getQuery(venue, year));
+        }
+        dblp.collect(queries);
+        List<ElementArticle> result = new ArrayList<ElementArticle>();
+        for (QueryDBLP query : queries) {
+            result.addAll(getElements(query.getResult(), ElementArticle.class));
+        }
+        return result;
+    }
+
+    /**
+     * Converts the given values into a sorted list of elements. Results of queries are stored in a
+     * dictionary of their own, so that they are not retained by the dictionary of the cache.
+     * @param values
+     * @param clazz
+     * @return
+     */
+    private <T extends Element> List<T> getElements(Collection<String> values, Class<T> clazz) {
+
+        List<String> list = new ArrayList<String>(values);
+        list.remove("");
+        Collections.sort(list);
+
+        // Equal values are adjacent, so that they can be appended without hashing
+        Dictionary dictionary = new Dictionary(list.size());
+        List<T> result = new ArrayList<T>();
+        String previous = null;
+        int id = -1;
+        for (String element : list) {
+            if (!element.equals(previous)) {
+                id = dictionary.append(element);
+                previous = element;
+            }
+            result.add(getElement(dictionary, id, clazz));
+        }
+        dictionary.trim();
+        return result;
+    }
+
+    /**
+     * Returns an element for the value with the given identifier in the given dictionary
+     * @param dictionary
+     * @param id
+     * @param clazz
+     * @return
+     */
+    private <T extends Element> T getElement(Dictionary dictionary, int id, Class<T> clazz) {
+        try {
+            return clazz.getDeclaredConstructor(Dictionary.class, int.class).newInstance(dictionary, id);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Computes citation metrics from the given publications
+     * @param author
+     * @param publications
+     * @param year
+     * @return
+     * @throws IOException
+     */
+    private AuthorMetrics getMetrics(ElementAuthor author, Map<Integer, List<ElementArticle>> publications, int year) throws IOException {
+
+        // Assign each title to the earliest year in which it appeared
+        Map<ElementArticle, Integer> articles = new LinkedHashMap<ElementArticle, Integer>();
+        for (Entry<Integer, List<ElementArticle>> entry : publications.entrySet()) {
+            int published = entry.getKey();
+            if (published >= 1800 && published <= year) {
+                for (ElementArticle article : entry.getValue()) {
+                    if (!articles.containsKey(article)) {
+                        articles.put(article, published);
+                    }
+                }
+            }
+        }
+
+        // Fetch citations of all articles in all years concurrently
+        List<ElementArticle> requests = new ArrayList<ElementArticle>();
+        IntList years = new IntList();
+        for (Entry<ElementArticle, Integer> entry : articles.entrySet()) {
+            for (int current = entry.getValue(); current <= year; current++) {
+                requests.add(entry.getKey());
+                years.add(current);
+            }
+        }
+        int[] counts = scholar.get(requests, years.toArray());
+
+        // Collect citations. The last count of each article is the one in the given year.
+        int[] totals = new int[articles.size()];
+        int index = 0;
+        int position = 0;
+        int citations = 0;
+        int recentPublications = 0;
+        int recentCitations = 0;
+        for (Entry<ElementArticle, Integer> entry : articles.entrySet()) {
+            for (int current = entry.getValue(); current <= year; current++) {
+                totals[index] += counts[position++];
+            }
+            if (entry.getValue() == year - 1 || entry.getValue() == year - 2) {
+                recentPublications++;
+                recentCitations += counts[position - 1];
+            }
+            citations += totals[index++];
+        }
+
+        // H-index
+        Arrays.sort(totals);
+        int hIndex = 0;
+        while (hIndex < totals.length && totals[totals.length - 1 - hIndex] > hIndex) {
+            hIndex++;
+        }
+
+        return new AuthorMetrics(author, year, articles.size(), citations, hIndex, (double) recentCitations / (double) recentPublications);
+    }
+
+    /**
+     * Returns a query for the articles in the given venue in the given year
+     * @param venue
+     * @param year
+     * @return
+     */
+    private QueryDBLP getQuery(Element venue, int year) {
+        if (venue instanceof ElementJournal) {
+            return new QueryDBLP("article", "journal", venue.getValue(), year);
+        } else if (venue instanceof ElementConference) {
+            return new QueryDBLP("inproceedings", "booktitle", venue.getValue(), year);
+        } else {
+            throw new IllegalArgumentException("Not a venue: " + venue.getValue());
+        }
+    }
+
+    /**
+     * Returns the articles of the two years before the given year, which are considered for the impact factor
+     * @param articles Articles by year
+     * @param year
+     * @return
+     */
+    private List<ElementArticle> getWindow(Map<Integer, List<ElementArticle>> articles, int year) {
+        List<ElementArticle> result = new ArrayList<ElementArticle>();
+        result.addAll(articles.get(year - 2));
+        result.addAll(articles.get(year - 1));
+        return result;
+    }
+
     /**
      * Returns all values of the given tag that contain that contain the given value.
      * @param tag
@@ -207,24 +879,34 @@ public class Bibliometrics {
     private <T extends Element> List<T> getMatchingValuesInTag(String tag, String value, Class<T> clazz) throws IOException {
         
         // Collect
-        List<String> list = new ArrayList<String>(new ReaderDBLP().collect(tag));
-        Iterator<String> iter = list.iterator();
-        while (iter.hasNext()) {
-            if (!iter.next().contains(value)) {
-                iter.remove();
-            }
-        }
-        Collections.sort(list);
+        List<String> list = dblp.find(tag, value);
         
-        // Create result
+        // Create result, values are distinct
+        Dictionary dictionary = new Dictionary(list.size());
         List<T> result = new ArrayList<T>();
         for (String element : list) {
-            try {
-                result.add(clazz.getConstructor(String.class).newInstance(element));
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+            result.add(getElement(dictionary, dictionary.append(element), clazz));
+        }
+        dictionary.trim();
+        return result;
+    }
+
+    /**
+     * Returns all values of the given tag that start with the given value.
+     * @param tag
+     * @param prefix
+     * @param clazz 
+     * @return
+     * @throws IOException
+     */
+    private <T extends Element> List<T> getValuesInTagWithPrefix(String tag, String prefix, Class<T> clazz) throws IOException {
+        List<String> list = dblp.findPrefix(tag, prefix);
+        Dictionary dictionary = new Dictionary(list.size());
+        List<T> result = new ArrayList<T>();
+        for (String element : list) {
+            result.add(getElement(dictionary, dictionary.append(element), clazz));
         }
+        dictionary.trim();
         return result;
     }
 
@@ -243,19 +925,6 @@ public class Bibliometrics {
     private <T extends Element> List<T> getMatchingValuesInTag(String tag1, String value1, String tag2, String value2, String tag3, String tag4, Class<T> clazz) throws IOException {
         
         // Collect
-        List<String> list = new ArrayList<String>(new ReaderDBLP().collect(tag1, value1, tag2, value2, tag3, tag4));
-        list.remove("");
-        Collections.sort(list);
-
-        // Create result
-        List<T> result = new ArrayList<T>();
-        for (String element : list) {
-            try {
-                result.add(clazz.getConstructor(String.class).newInstance(element));
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }
-        return result;
+        return getElements(dblp.collect(tag1, value1, tag2, value2, tag3, tag4), clazz);
     }
 }
\ No newline at end of file
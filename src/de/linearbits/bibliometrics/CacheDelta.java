@@ -0,0 +1,179 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.util.Arrays;
+
+/**
+ * Citation counts that have been changed since the last snapshot of the cache, by title and year.
+ * Entries are stored in primitive arrays, in order of insertion, and are found with an
+ * open-addressing hash table. Removed entries are kept as tombstones, so that they hide the
+ * entries of the snapshot.
+ *
+ * @author Fabian Prasser
+ */
+class CacheDelta {
+
+    /** Returned for entries that are not contained*/
+    static final int MISSING   = -2;
+    /** Count of removed entries*/
+    static final int TOMBSTONE = -1;
+
+    /** Title and year of each entry*/
+    private long[]   keys      = new long[16];
+    /** Count of each entry, or a tombstone*/
+    private int[]    counts    = new int[16];
+    /** Number of entries*/
+    private int      size      = 0;
+    /** Hash table of entries, incremented by one, so that zero marks empty slots*/
+    private int[]    table     = new int[32];
+    /** Smallest year of an entry*/
+    private int      minYear   = Integer.MAX_VALUE;
+    /** Largest year of an entry*/
+    private int      maxYear   = Integer.MIN_VALUE;
+
+    /**
+     * Returns the count of the given entry, {@link #TOMBSTONE} if it has been removed, or {@link #MISSING}
+     * @param title
+     * @param year
+     * @return
+     */
+    int get(int title, int year) {
+        int entry = table[find(title, year)] - 1;
+        return entry == -1 ? MISSING : counts[entry];
+    }
+
+    /**
+     * Returns the count of the entry at the given position
+     * @param entry
+     * @return
+     */
+    int getCount(int entry) {
+        return counts[entry];
+    }
+
+    /**
+     * Returns the title of the entry at the given position
+     * @param entry
+     * @return
+     */
+    int getTitle(int entry) {
+        return (int) (keys[entry] >>> 32);
+    }
+
+    /**
+     * Returns the year of the entry at the given position
+     * @param entry
+     * @return
+     */
+    int getYear(int entry) {
+        return (int) keys[entry];
+    }
+
+    /**
+     * Marks all entries for the given title as removed
+     * @param title
+     */
+    void remove(int title) {
+        for (int year = minYear; year <= maxYear; year++) {
+            int entry = table[find(title, year)] - 1;
+            if (entry != -1) {
+                counts[entry] = TOMBSTONE;
+            }
+        }
+    }
+
+    /**
+     * Sets an entry. The count may be a tombstone.
+     * @param title
+     * @param year
+     * @param count
+     */
+    void set(int title, int year, int count) {
+
+        // Update
+        int slot = find(title, year);
+        if (table[slot] != 0) {
+            counts[table[slot] - 1] = count;
+            return;
+        }
+
+        // Add
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+            counts = Arrays.copyOf(counts, size << 1);
+        }
+        keys[size] = key(title, year);
+        counts[size] = count;
+        table[slot] = ++size;
+        minYear = Math.min(minYear, year);
+        maxYear = Math.max(maxYear, year);
+
+        // Grow
+        if (size * 2 > table.length) {
+            table = new int[table.length << 1];
+            for (int entry = 0; entry < size; entry++) {
+                table[find(getTitle(entry), getYear(entry))] = entry + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries, including tombstones
+     * @return
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns all years for which the given title has an entry, including tombstones
+     * @param title
+     * @return
+     */
+    IntList years(int title) {
+        IntList result = new IntList();
+        for (int year = minYear; year <= maxYear; year++) {
+            if (table[find(title, year)] != 0) {
+                result.add(year);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the slot of the given title and year in the hash table, or the empty slot at which
+     * it would be inserted
+     * @param title
+     * @param year
+     * @return
+     */
+    private int find(int title, int year) {
+        long key = key(title, year);
+        int mask = table.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (table[slot] != 0 && keys[table[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the key of the given title and year
+     * @param title
+     * @param year
+     * @return
+     */
+    private long key(int title, int year) {
+        return ((long) title << 32) | (year & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,230 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+/**
+ * A bounded set of recently used entries of the snapshot, by title and year. Entries are stored in
+ * primitive arrays of fixed size and are found with an open-addressing hash table. When the set is
+ * full, an entry is evicted with the CLOCK policy, which approximates LRU: a hand sweeps over the
+ * entries and evicts the first one that has not been used since the last sweep. Also counts hits,
+ * misses and evictions.
+ *
+ * @author Fabian Prasser
+ */
+class CacheHot {
+
+    /** Returned for entries that are not contained*/
+    static final int        UNKNOWN   = Integer.MIN_VALUE;
+
+    /** Title and year of each entry*/
+    private final long[]    keys;
+    /** Count of each entry, which may be {@link CacheDelta#MISSING}*/
+    private final int[]     counts;
+    /** Whether an entry has been used since the last sweep*/
+    private final boolean[] used;
+    /** Number of entries*/
+    private int             size      = 0;
+    /** Position of the hand*/
+    private int             hand      = 0;
+    /** Hash table of entries, incremented by one, so that zero marks empty slots*/
+    private final int[]     table;
+    /** Number of hits*/
+    private long            hits      = 0;
+    /** Number of misses*/
+    private long            misses    = 0;
+    /** Number of evictions*/
+    private long            evictions = 0;
+
+    /**
+     * Creates a new instance
+     * @param capacity
+     */
+    CacheHot(int capacity) {
+        this.keys = new long[capacity];
+        this.counts = new int[capacity];
+        this.used = new boolean[capacity];
+        this.table = new int[Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1];
+    }
+
+    /**
+     * Returns the count of the given entry, or {@link #UNKNOWN}. Counts as a hit or miss.
+     * @param title
+     * @param year
+     * @return
+     */
+    int get(int title, int year) {
+        int entry = table[find(key(title, year))] - 1;
+        if (entry == -1) {
+            misses++;
+            return UNKNOWN;
+        }
+        hits++;
+        used[entry] = true;
+        return counts[entry];
+    }
+
+    /**
+     * Returns the count of the entry at the given position
+     * @param entry
+     * @return
+     */
+    int getCount(int entry) {
+        return counts[entry];
+    }
+
+    /**
+     * Returns the number of evictions
+     * @return
+     */
+    long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of hits
+     * @return
+     */
+    long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of misses
+     * @return
+     */
+    long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the title of the entry at the given position
+     * @param entry
+     * @return
+     */
+    int getTitle(int entry) {
+        return (int) (keys[entry] >>> 32);
+    }
+
+    /**
+     * Returns the year of the entry at the given position
+     * @param entry
+     * @return
+     */
+    int getYear(int entry) {
+        return (int) keys[entry];
+    }
+
+    /**
+     * Adds the counters of the given instance to the counters of this instance
+     * @param other
+     */
+    void inherit(CacheHot other) {
+        this.hits += other.hits;
+        this.misses += other.misses;
+        this.evictions += other.evictions;
+    }
+
+    /**
+     * Adds or updates an entry, evicting another one if needed
+     * @param title
+     * @param year
+     * @param count
+     */
+    void put(int title, int year, int count) {
+
+        if (keys.length == 0) {
+            return;
+        }
+
+        // Update
+        long key = key(title, year);
+        int slot = find(key);
+        if (table[slot] != 0) {
+            counts[table[slot] - 1] = count;
+            return;
+        }
+
+        // Find a position
+        int entry;
+        if (size < keys.length) {
+            entry = size++;
+        } else {
+            while (used[hand]) {
+                used[hand] = false;
+                hand = (hand + 1) % keys.length;
+            }
+            entry = hand;
+            hand = (hand + 1) % keys.length;
+            remove(find(keys[entry]));
+            evictions++;
+        }
+
+        // Store
+        keys[entry] = key;
+        counts[entry] = count;
+        used[entry] = false;
+        table[find(key)] = entry + 1;
+    }
+
+    /**
+     * Returns the number of entries
+     * @return
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot of the given key in the hash table, or the empty slot at which it would be inserted
+     * @param key
+     * @return
+     */
+    private int find(long key) {
+        int mask = table.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (table[slot] != 0 && keys[table[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the key of the given title and year
+     * @param title
+     * @param year
+     * @return
+     */
+    private long key(int title, int year) {
+        return ((long) title << 32) | (year & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Removes the given slot from the hash table. Subsequent entries of the same cluster are shifted
+     * backwards, so that no tombstones are needed.
+     * @param slot
+     */
+    private void remove(int slot) {
+        int mask = table.length - 1;
+        table[slot] = 0;
+        int next = (slot + 1) & mask;
+        while (table[next] != 0) {
+            int entry = table[next] - 1;
+            int home = (int) ((keys[entry] * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                table[next] = 0;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+}
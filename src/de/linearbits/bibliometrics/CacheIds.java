@@ -0,0 +1,201 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A simple file-based cache of the cluster ids of titles on Google Scholar. The id of a title never
+ * changes, so that it only needs to be searched once, regardless of the number of years for which
+ * citations are counted. Titles for which no id has been found are cached as well.<br>
+ * <br>
+ * On disk, the cache is an append-only log (<code>ids.csv</code> in the folder of the cache of citations)
+ * with one record per line. A record of the form <code>title;id</code> stores an id, a record of the form
+ * <code>title;</code> stores that there is no id, and a record that only consists of a title removes the
+ * entry. When loading, a partially written last record is truncated, the log is replayed, and it is
+ * rewritten if most of its records have been overwritten. Losing records is harmless, as the respective
+ * titles are simply searched again.<br>
+ * <br>
+ * The cache is thread-safe.
+ *
+ * @author Fabian Prasser
+ */
+class CacheIds {
+
+    /** Charset*/
+    private static final Charset       UTF8    = Charset.forName("UTF-8");
+    /** Stored for titles without an id*/
+    private static final String        NONE    = "";
+
+    /** Values of all titles*/
+    private final Dictionary           strings;
+    /** Log*/
+    private final File                 log;
+    /** Ids by title*/
+    private final Map<Integer, String> ids     = new HashMap<Integer, String>();
+    /** Records that have not been written*/
+    private final StringBuilder        pending = new StringBuilder();
+
+    /**
+     * Creates a new instance, whose log is located in the given folder, which is created if needed
+     * @param folder
+     * @param strings
+     * @throws IOException
+     */
+    CacheIds(File folder, Dictionary strings) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Cannot create: " + folder);
+        }
+        this.strings = strings;
+        this.log = new File(folder, "ids.csv");
+        ReaderCache.truncate(log);
+        if (load() > ids.size() * 2 + 1024) {
+            rewrite();
+        }
+    }
+
+    /**
+     * Writes all pending records
+     * @throws IOException
+     */
+    void close() throws IOException {
+        persist();
+    }
+
+    /**
+     * Returns whether the cache contains an entry for the given title, which may state that there is no id
+     * @param title
+     * @return
+     */
+    synchronized boolean contains(int title) {
+        return ids.containsKey(title);
+    }
+
+    /**
+     * Returns the id of the given title, or null if there is no id or no entry
+     * @param title
+     * @return
+     */
+    synchronized String get(int title) {
+        String id = ids.get(title);
+        return id == null || id.equals(NONE) ? null : id;
+    }
+
+    /**
+     * Appends all records written since the last call to the log
+     * @throws IOException
+     */
+    void persist() throws IOException {
+        String records;
+        synchronized (this) {
+            if (pending.length() == 0) {
+                return;
+            }
+            records = pending.toString();
+            pending.setLength(0);
+        }
+        synchronized (log) {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(log, true), UTF8);
+            try {
+                writer.write(records);
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Stores the id of the given title
+     * @param title
+     * @param id The id, or null if there is none
+     */
+    synchronized void put(int title, String id) {
+        id = id == null ? NONE : id;
+        if (!id.equals(ids.put(title, id))) {
+            pending.append(strings.decode(title)).append(';').append(id).append('\n');
+        }
+    }
+
+    /**
+     * Removes the entry for the given title, if any
+     * @param title
+     */
+    synchronized void remove(String title) {
+        int id = strings.lookup(title.replace(";", ""));
+        if (id != -1 && ids.remove(id) != null) {
+            pending.append(strings.decode(id)).append('\n');
+        }
+    }
+
+    /**
+     * Replays the log, if it exists. Returns the number of records.
+     * @return
+     * @throws IOException
+     */
+    private int load() throws IOException {
+        if (!log.exists()) {
+            return 0;
+        }
+        int records = 0;
+        String line = null;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(log), UTF8));
+        try {
+            line = reader.readLine();
+            while (line != null) {
+                String[] parts = line.split(";", -1);
+                int title = strings.encode(parts[0]);
+                if (parts.length == 1) {
+                    ids.remove(title);
+                } else {
+                    ids.put(title, parts[1]);
+                }
+                records++;
+                line = reader.readLine();
+            }
+        } catch (Exception e) {
+            throw new IOException("Error reading cache: " + log + ", line: " + line, e);
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    /**
+     * Replaces the log with one record per entry
+     * @throws IOException
+     */
+    private void rewrite() throws IOException {
+        File temp = new File(log.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temp), UTF8);
+        try {
+            for (Entry<Integer, String> entry : ids.entrySet()) {
+                writer.write(strings.decode(entry.getKey()) + ";" + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        Files.move(temp.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,274 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A read-only snapshot of the citation cache, which is memory-mapped from a binary file. The file
+ * contains a table of entries, each of which consists of the 64-bit fingerprint of a title, a year
+ * and a count, sorted by fingerprint and year. Entries are found by binary search on the mapping,
+ * so that the snapshot is never loaded into the heap.
+ *
+ * @author Fabian Prasser
+ */
+class CacheSnapshot {
+
+    /** Magic number*/
+    private static final int MAGIC   = 0x43495443;
+    /** Version of the file format*/
+    private static final int VERSION = 1;
+    /** Size of the header*/
+    private static final int HEADER  = 12;
+    /** Size of an entry*/
+    private static final int ENTRY   = 16;
+
+    /**
+     * Maps the given file. Returns an empty snapshot, if the file does not exist.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static CacheSnapshot open(File file) throws IOException {
+        if (!file.exists()) {
+            return new CacheSnapshot(ByteBuffer.allocate(0), 0);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Invalid cache: " + file);
+            }
+            int size = buffer.getInt(8);
+            if (buffer.limit() != HEADER + (long) size * ENTRY) {
+                throw new IOException("Invalid cache: " + file);
+            }
+            return new CacheSnapshot(buffer, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes a new snapshot that consists of the entries of the given snapshot, overwritten by the
+     * entries of the given deltas, which must not contain the same title. The file is replaced atomically.
+     * @param file
+     * @param snapshot
+     * @param deltas
+     * @param strings Dictionary of the titles in the deltas
+     * @throws IOException
+     */
+    static void write(File file, CacheSnapshot snapshot, CacheDelta[] deltas, Dictionary strings) throws IOException {
+
+        // Collect and sort the deltas
+        int size = 0;
+        for (CacheDelta delta : deltas) {
+            size += delta.size();
+        }
+        final long[] fingerprints = new long[size];
+        final int[] years = new int[size];
+        int[] counts = new int[size];
+        Integer[] order = new Integer[size];
+        int index = 0;
+        for (CacheDelta delta : deltas) {
+            for (int entry = 0; entry < delta.size(); entry++) {
+                fingerprints[index] = strings.fingerprint(delta.getTitle(entry));
+                years[index] = delta.getYear(entry);
+                counts[index] = delta.getCount(entry);
+                order[index] = index;
+                index++;
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return compareTo(fingerprints[o1], years[o1], fingerprints[o2], years[o2]);
+            }
+        });
+
+        // Count
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < snapshot.size || j < size) {
+            int comparison = i == snapshot.size ? 1 : j == size ? -1 :
+                             compareTo(snapshot.getFingerprint(i), snapshot.getYear(i), fingerprints[order[j]], years[order[j]]);
+            if (comparison < 0) {
+                count++;
+                i++;
+            } else {
+                if (counts[order[j]] != CacheDelta.TOMBSTONE) {
+                    count++;
+                }
+                i += comparison == 0 ? 1 : 0;
+                j++;
+            }
+        }
+
+        // Merge
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            i = 0;
+            j = 0;
+            while (i < snapshot.size || j < size) {
+                int comparison = i == snapshot.size ? 1 : j == size ? -1 :
+                                 compareTo(snapshot.getFingerprint(i), snapshot.getYear(i), fingerprints[order[j]], years[order[j]]);
+                if (comparison < 0) {
+                    out.writeLong(snapshot.getFingerprint(i));
+                    out.writeInt(snapshot.getYear(i));
+                    out.writeInt(snapshot.getCount(i));
+                    i++;
+                } else {
+                    int entry = order[j];
+                    if (counts[entry] != CacheDelta.TOMBSTONE) {
+                        out.writeLong(fingerprints[entry]);
+                        out.writeInt(years[entry]);
+                        out.writeInt(counts[entry]);
+                    }
+                    i += comparison == 0 ? 1 : 0;
+                    j++;
+                }
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Compares two entries
+     * @param fingerprint1
+     * @param year1
+     * @param fingerprint2
+     * @param year2
+     * @return
+     */
+    private static int compareTo(long fingerprint1, int year1, long fingerprint2, int year2) {
+        if (fingerprint1 != fingerprint2) {
+            return fingerprint1 < fingerprint2 ? -1 : 1;
+        }
+        return year1 < year2 ? -1 : (year1 == year2 ? 0 : 1);
+    }
+
+    /** Mapping*/
+    private final ByteBuffer buffer;
+    /** Number of entries*/
+    private final int        size;
+
+    /**
+     * Creates a new instance
+     * @param buffer
+     * @param size
+     */
+    private CacheSnapshot(ByteBuffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * Returns the count for the given title and year, or {@link CacheDelta#MISSING}
+     * @param fingerprint
+     * @param year
+     * @return
+     */
+    int get(long fingerprint, int year) {
+        int entry = find(fingerprint, year);
+        return entry < 0 ? CacheDelta.MISSING : getCount(entry);
+    }
+
+    /**
+     * Returns the number of entries
+     * @return
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns all years for which the given title has an entry
+     * @param fingerprint
+     * @return
+     */
+    IntList years(long fingerprint) {
+        IntList result = new IntList();
+        int entry = find(fingerprint, Integer.MIN_VALUE);
+        for (entry = entry < 0 ? -entry - 1 : entry; entry < size && getFingerprint(entry) == fingerprint; entry++) {
+            result.add(getYear(entry));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position of the given entry or, if it is not contained, (-(insertion point) - 1)
+     * @param fingerprint
+     * @param year
+     * @return
+     */
+    private int find(long fingerprint, int year) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareTo(getFingerprint(middle), getYear(middle), fingerprint, year);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the count of the given entry
+     * @param entry
+     * @return
+     */
+    private int getCount(int entry) {
+        return buffer.getInt(HEADER + entry * ENTRY + 12);
+    }
+
+    /**
+     * Returns the fingerprint of the given entry
+     * @param entry
+     * @return
+     */
+    private long getFingerprint(int entry) {
+        return buffer.getLong(HEADER + entry * ENTRY);
+    }
+
+    /**
+     * Returns the year of the given entry
+     * @param entry
+     * @return
+     */
+    private int getYear(int entry) {
+        return buffer.getInt(HEADER + entry * ENTRY + 8);
+    }
+}
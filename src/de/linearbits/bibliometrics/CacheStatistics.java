@@ -0,0 +1,100 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+/**
+ * Statistics about the in-memory tier of the cache of citations, which holds recently used
+ * entries of the snapshot on disk
+ * @author Fabian Prasser
+ */
+public class CacheStatistics {
+
+    /** Hits*/
+    private final long hits;
+    /** Misses*/
+    private final long misses;
+    /** Evictions*/
+    private final long evictions;
+    /** Number of entries*/
+    private final int  size;
+    /** Maximal number of entries*/
+    private final int  capacity;
+
+    /**
+     * Creates a new instance
+     * @param hits
+     * @param misses
+     * @param evictions
+     * @param size
+     * @param capacity
+     */
+    CacheStatistics(long hits, long misses, long evictions, int size, int capacity) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the maximal number of entries in memory
+     * @return
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of entries that have been evicted from memory
+     * @return
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the fraction of lookups that have been answered from memory
+     * @return
+     */
+    public double getHitRate() {
+        return hits + misses == 0 ? 0d : (double) hits / (double) (hits + misses);
+    }
+
+    /**
+     * Returns the number of lookups that have been answered from memory
+     * @return
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that have been answered from disk
+     * @return
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries in memory
+     * @return
+     */
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size + ", capacity=" + capacity;
+    }
+}
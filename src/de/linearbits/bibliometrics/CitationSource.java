@@ -0,0 +1,40 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.IOException;
+
+/**
+ * A source of citation counts, such as Google Scholar. Implementations must be thread-safe.
+ *
+ * @author Fabian Prasser
+ */
+public interface CitationSource {
+
+    /**
+     * Returns the number of citations of the publication with the given id in the given span of years
+     * @param id
+     * @param from First year
+     * @param to Last year
+     * @return
+     * @throws IOException
+     */
+    public int getCitationCount(String id, int from, int to) throws IOException;
+
+    /**
+     * Returns the id of the publication with the given title, or null if there is none
+     * @param title
+     * @return
+     * @throws IOException
+     */
+    public String getId(String title) throws IOException;
+}
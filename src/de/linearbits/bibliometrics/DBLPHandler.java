@@ -0,0 +1,36 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A SAX handler for the DBLP XML dump that can be split into independent handlers for
+ * chunks of the dump, whose results are merged afterwards.
+ *
+ * @author Fabian Prasser
+ */
+abstract class DBLPHandler extends DefaultHandler {
+
+    /**
+     * Merges the results of a handler returned by {@link #split()}. Chunks are merged in
+     * document order and never concurrently.
+     * @param handler
+     */
+    abstract void merge(DBLPHandler handler);
+
+    /**
+     * Returns a new, empty handler with the same configuration as this one
+     * @return
+     */
+    abstract DBLPHandler split();
+}
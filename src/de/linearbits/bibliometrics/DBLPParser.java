@@ -0,0 +1,32 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A parser engine for the DBLP XML dump
+ *
+ * @author Fabian Prasser
+ */
+interface DBLPParser {
+
+    /**
+     * Parses the given document. The system id is used for resolving relative references, e.g. to the DTD.
+     * @param input
+     * @param systemId
+     * @param handler
+     * @throws IOException
+     */
+    void parse(InputStream input, String systemId, DBLPHandler handler) throws IOException;
+}
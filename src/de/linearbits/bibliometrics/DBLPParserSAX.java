@@ -0,0 +1,42 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Parses the DBLP XML dump with a validating SAX parser
+ *
+ * @author Fabian Prasser
+ */
+class DBLPParserSAX implements DBLPParser {
+
+    @Override
+    public void parse(InputStream input, String systemId, DBLPHandler handler) throws IOException {
+        try {
+            InputSource source = new InputSource(input);
+            source.setSystemId(systemId);
+            SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+            SAXParser parser = parserFactory.newSAXParser();
+            parser.getXMLReader().setFeature("http://xml.org/sax/features/validation", true);
+            parser.parse(source, handler);
+        } catch (Exception e) {
+            throw (new IOException("Error parsing DBLP", e));
+        }
+    }
+}
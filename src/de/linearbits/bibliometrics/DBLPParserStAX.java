@@ -0,0 +1,227 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Parses the DBLP XML dump with a non-validating StAX parser. The DTD is not processed.
+ * Instead, character entities are resolved from a precomputed table. Text is passed to the
+ * handler without copying, so that strings are only created for fields that are actually
+ * needed by the handler.
+ *
+ * @author Fabian Prasser
+ */
+class DBLPParserStAX implements DBLPParser {
+
+    /**
+     * Gives access to the attributes of the current element of a stream reader
+     * @author Fabian Prasser
+     */
+    private static class StreamAttributes implements Attributes {
+
+        /** Reader*/
+        private final XMLStreamReader reader;
+
+        /**
+         * Creates a new instance
+         * @param reader
+         */
+        StreamAttributes(XMLStreamReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int getIndex(String qName) {
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                if (reader.getAttributeLocalName(i).equals(qName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int getIndex(String uri, String localName) {
+            return getIndex(localName);
+        }
+
+        @Override
+        public int getLength() {
+            return reader.getAttributeCount();
+        }
+
+        @Override
+        public String getLocalName(int index) {
+            return reader.getAttributeLocalName(index);
+        }
+
+        @Override
+        public String getQName(int index) {
+            return reader.getAttributeLocalName(index);
+        }
+
+        @Override
+        public String getType(int index) {
+            return reader.getAttributeType(index);
+        }
+
+        @Override
+        public String getType(String qName) {
+            int index = getIndex(qName);
+            return index == -1 ? null : getType(index);
+        }
+
+        @Override
+        public String getType(String uri, String localName) {
+            return getType(localName);
+        }
+
+        @Override
+        public String getURI(int index) {
+            return "";
+        }
+
+        @Override
+        public String getValue(int index) {
+            return reader.getAttributeValue(index);
+        }
+
+        @Override
+        public String getValue(String qName) {
+            int index = getIndex(qName);
+            return index == -1 ? null : getValue(index);
+        }
+
+        @Override
+        public String getValue(String uri, String localName) {
+            return getValue(localName);
+        }
+    }
+
+    /** Character entities of ISO 8859-1, starting at code point 160*/
+    private static final String[] LATIN1 = { "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect",
+                                             "uml", "copy", "ordf", "laquo", "not", "shy", "reg", "macr",
+                                             "deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot",
+                                             "cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest",
+                                             "Agrave", "Aacute", "Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil",
+                                             "Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml",
+                                             "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times",
+                                             "Oslash", "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig",
+                                             "agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil",
+                                             "egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc", "iuml",
+                                             "eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml", "divide",
+                                             "oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml" };
+
+    /** Declaration of a character entity in the DTD*/
+    private static final Pattern  ENTITY = Pattern.compile("<!ENTITY\\s+(\\w+)\\s+\"&#(x?[0-9a-fA-F]+);\"");
+
+    /** Entities*/
+    private final Map<String, char[]> entities = new HashMap<String, char[]>();
+    /** Factory*/
+    private final XMLInputFactory     factory;
+
+    /**
+     * Creates a new instance. Character entities declared in the given DTD are added to
+     * the table of entities, if the file exists.
+     * @param dtd
+     * @throws IOException
+     */
+    DBLPParserStAX(File dtd) throws IOException {
+
+        // Entities
+        for (int i = 0; i < LATIN1.length; i++) {
+            entities.put(LATIN1[i], Character.toChars(160 + i));
+        }
+        if (dtd.exists()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(dtd), "ISO-8859-1"));
+            try {
+                String line = reader.readLine();
+                while (line != null) {
+                    Matcher matcher = ENTITY.matcher(line);
+                    while (matcher.find()) {
+                        String code = matcher.group(2);
+                        int codePoint = code.startsWith("x") ? Integer.parseInt(code.substring(1), 16) : Integer.parseInt(code);
+                        entities.put(matcher.group(1), Character.toChars(codePoint));
+                    }
+                    line = reader.readLine();
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        // Parser
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+    }
+
+    @Override
+    public void parse(InputStream input, String systemId, DBLPHandler handler) throws IOException {
+        try {
+            XMLStreamReader reader;
+            synchronized (factory) {
+                reader = factory.createXMLStreamReader(systemId, input);
+            }
+            Attributes attributes = new StreamAttributes(reader);
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String start = reader.getLocalName();
+                    handler.startElement("", start, start, attributes);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    String end = reader.getLocalName();
+                    handler.endElement("", end, end);
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    char[] entity = entities.get(reader.getLocalName());
+                    if (entity == null) {
+                        throw new IOException("Unknown entity: " + reader.getLocalName());
+                    }
+                    handler.characters(entity, 0, entity.length);
+                    break;
+                default:
+                    // Ignore
+                }
+            }
+            reader.close();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw (new IOException("Error parsing DBLP", e));
+        }
+    }
+}
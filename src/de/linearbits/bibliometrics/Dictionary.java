@@ -0,0 +1,484 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A pool of distinct strings, each of which is identified by an integer. Identifiers are assigned
+ * in order of insertion, starting at zero. Strings are stored as UTF-8 in a single byte array and
+ * are found with an open-addressing hash table, so that no string objects are retained. The hash
+ * table is only built when the first string is looked up.<br>
+ * <br>
+ * Reads do not lock. The arrays are published via a volatile {@link State}, which is replaced by every
+ * change, and only changes are synchronized. Changes only write behind the end of the published data
+ * or into empty slots of the hash table, which readers skip if they refer to strings that are not
+ * contained in their state.
+ *
+ * @author Fabian Prasser
+ */
+class Dictionary {
+
+    /**
+     * A consistent view of the dictionary
+     * @author Fabian Prasser
+     */
+    private static class State {
+
+        /** Data*/
+        private final byte[] data;
+        /** Offsets of the strings in the data*/
+        private final int[]  offsets;
+        /** Number of strings*/
+        private final int    size;
+        /** Hash table of identifiers, incremented by one, so that zero marks empty slots, or null*/
+        private final int[]  table;
+
+        /**
+         * Creates a new instance
+         * @param data
+         * @param offsets
+         * @param size
+         * @param table
+         */
+        private State(byte[] data, int[] offsets, int size, int[] table) {
+            this.data = data;
+            this.offsets = offsets;
+            this.size = size;
+            this.table = table;
+        }
+
+        /**
+         * Returns whether the data at the given offset equals the given value
+         * @param offset
+         * @param value
+         * @return
+         */
+        private boolean equals(int offset, byte[] value) {
+            for (int i = 0; i < value.length; i++) {
+                if (data[offset + i] != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the slot of the given range of bytes in the hash table, or the empty slot at which
+         * it would be inserted. Slots of strings that have been added later are skipped.
+         * @param bytes
+         * @param offset
+         * @param end
+         * @return
+         */
+        private int find(byte[] bytes, int offset, int end) {
+            int mask = table.length - 1;
+            int slot = hash(bytes, offset, end) & mask;
+            int entry;
+            while ((entry = table[slot]) != 0) {
+                int id = entry - 1;
+                if (id < size) {
+                    int start = offsets[id];
+                    if (offsets[id + 1] - start == end - offset) {
+                        boolean equal = true;
+                        for (int i = 0; i < end - offset && equal; i++) {
+                            equal = data[start + i] == bytes[offset + i];
+                        }
+                        if (equal) {
+                            return slot;
+                        }
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Returns the identifier of the given UTF-8 encoded string, or -1 if it is not contained
+         * @param bytes
+         * @return
+         */
+        private int get(byte[] bytes) {
+            int id = table[find(bytes, 0, bytes.length)] - 1;
+            return id < size ? id : -1;
+        }
+
+        /**
+         * Returns a hash table of all strings
+         * @return
+         */
+        private int[] index() {
+            State state = new State(data, offsets, size, new int[Integer.highestOneBit(Math.max(16, size * 2)) << 1]);
+            for (int id = 0; id < size; id++) {
+                state.table[state.find(data, offsets[id], offsets[id + 1])] = id + 1;
+            }
+            return state.table;
+        }
+    }
+
+    /** Charset*/
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Reads a dictionary that has been written with {@link #write(DataOutputStream)}
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    static Dictionary read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        int[] offsets = new int[size + 1];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = in.readInt();
+        }
+        byte[] data = new byte[offsets[size]];
+        in.readFully(data);
+        return new Dictionary(data, offsets, size);
+    }
+
+    /**
+     * Returns the 64-bit fingerprint of the given range
+     * @param data
+     * @param offset
+     * @param end
+     * @return
+     */
+    private static long fingerprint(byte[] data, int offset, int end) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = offset; i < end; i++) {
+            hash = (hash ^ data[i]) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Returns the hash code of the given range
+     * @param data
+     * @param offset
+     * @param end
+     * @return
+     */
+    private static int hash(byte[] data, int offset, int end) {
+        int hash = 0x811C9DC5;
+        for (int i = offset; i < end; i++) {
+            hash = (hash ^ data[i]) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Current state*/
+    private volatile State state;
+
+    /**
+     * Creates a new instance
+     */
+    Dictionary() {
+        this(1 << 6);
+    }
+
+    /**
+     * Creates a new instance with the given initial capacity
+     * @param capacity
+     */
+    Dictionary(int capacity) {
+        this(new byte[Math.max(16, capacity) << 4], new int[Math.max(16, capacity) + 1], 0);
+    }
+
+    /**
+     * Creates a new instance
+     * @param data
+     * @param offsets
+     * @param size
+     */
+    private Dictionary(byte[] data, int[] offsets, int size) {
+        this.state = new State(data, offsets, size, null);
+    }
+
+    /**
+     * Adds the string with the given identifier in the given dictionary and returns its new identifier. The
+     * string is copied without being decoded. It must not be contained in this dictionary yet.
+     * @param dictionary
+     * @param id
+     * @return
+     */
+    int append(Dictionary dictionary, int id) {
+        State other = dictionary.state;
+        return append(Arrays.copyOfRange(other.data, other.offsets[id], other.offsets[id + 1]));
+    }
+
+    /**
+     * Adds the given string and returns its identifier. The string must not be contained yet.
+     * @param value
+     * @return
+     */
+    int append(String value) {
+        return append(value.getBytes(UTF8));
+    }
+
+    /**
+     * Returns whether the string with the given identifier contains the given UTF-8 encoded value
+     * @param id
+     * @param value
+     * @return
+     */
+    boolean contains(int id, byte[] value) {
+        State state = this.state;
+        int end = state.offsets[id + 1] - value.length;
+        for (int i = state.offsets[id]; i <= end; i++) {
+            if (state.equals(i, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the string with the given identifier
+     * @param id
+     * @return
+     */
+    String decode(int id) {
+        State state = this.state;
+        if (id < 0 || id >= state.size) {
+            throw new IllegalArgumentException("Unknown identifier: " + id);
+        }
+        return new String(state.data, state.offsets[id], state.offsets[id + 1] - state.offsets[id], UTF8);
+    }
+
+    /**
+     * Returns the identifier of the string with the given identifier in the given dictionary. Adds the
+     * string without decoding it, if it is not contained yet.
+     * @param dictionary
+     * @param id
+     * @return
+     */
+    int encode(Dictionary dictionary, int id) {
+        State other = dictionary.state;
+        return encode(Arrays.copyOfRange(other.data, other.offsets[id], other.offsets[id + 1]));
+    }
+
+    /**
+     * Returns the identifier of the given string. Adds the string, if it is not contained yet.
+     * @param value
+     * @return
+     */
+    int encode(String value) {
+        return encode(value.getBytes(UTF8));
+    }
+
+    /**
+     * Returns whether the string with the given identifier equals the string with the given identifier
+     * in the given dictionary
+     * @param id
+     * @param dictionary
+     * @param other
+     * @return
+     */
+    boolean equals(int id, Dictionary dictionary, int other) {
+        State state = this.state;
+        State external = dictionary.state;
+        int offset = state.offsets[id];
+        int length = state.offsets[id + 1] - offset;
+        int start = external.offsets[other];
+        if (external.offsets[other + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (state.data[offset + i] != external.data[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of the string with the given identifier, which does not depend
+     * on the identifier and can thus be stored persistently
+     * @param id
+     * @return
+     */
+    long fingerprint(int id) {
+        State state = this.state;
+        return fingerprint(state.data, state.offsets[id], state.offsets[id + 1]);
+    }
+
+    /**
+     * Returns the 64-bit fingerprint of the given string, which is the same as the fingerprint
+     * of its identifier. The string does not need to be contained.
+     * @param value
+     * @return
+     */
+    long fingerprint(String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        return fingerprint(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns a hash code of the string with the given identifier, which does not depend on the identifier
+     * @param id
+     * @return
+     */
+    int hash(int id) {
+        State state = this.state;
+        return hash(state.data, state.offsets[id], state.offsets[id + 1]);
+    }
+
+    /**
+     * Returns the identifier of the given string, or -1 if it is not contained
+     * @param value
+     * @return
+     */
+    int lookup(String value) {
+        return getIndexed().get(value.getBytes(UTF8));
+    }
+
+    /**
+     * Returns the number of strings
+     * @return
+     */
+    int size() {
+        return state.size;
+    }
+
+    /**
+     * Returns whether the string with the given identifier starts with the given UTF-8 encoded value
+     * @param id
+     * @param value
+     * @return
+     */
+    boolean startsWith(int id, byte[] value) {
+        State state = this.state;
+        return state.offsets[id] + value.length <= state.offsets[id + 1] && state.equals(state.offsets[id], value);
+    }
+
+    /**
+     * Releases unused capacity. Called after all strings have been added.
+     */
+    synchronized void trim() {
+        State state = this.state;
+        this.state = new State(Arrays.copyOf(state.data, state.offsets[state.size]), Arrays.copyOf(state.offsets, state.size + 1), state.size, state.table);
+    }
+
+    /**
+     * Writes the dictionary
+     * @param out
+     * @throws IOException
+     */
+    void write(DataOutputStream out) throws IOException {
+        State state = this.state;
+        out.writeInt(state.size);
+        for (int i = 0; i <= state.size; i++) {
+            out.writeInt(state.offsets[i]);
+        }
+        out.write(state.data, 0, state.offsets[state.size]);
+    }
+
+    /**
+     * Stores the given string without using the hash table, which is dropped, and returns its identifier
+     * @param bytes
+     * @return
+     */
+    private synchronized int append(byte[] bytes) {
+        state = append(state, bytes, null);
+        return state.size - 1;
+    }
+
+    /**
+     * Stores the given string and returns the new state, which is not published yet
+     * @param state
+     * @param bytes
+     * @param table
+     * @return
+     */
+    private State append(State state, byte[] bytes, int[] table) {
+        byte[] data = state.data;
+        int[] offsets = state.offsets;
+        int size = state.size;
+        int offset = offsets[size];
+        if (offset + bytes.length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length << 1, offset + bytes.length));
+        }
+        System.arraycopy(bytes, 0, data, offset, bytes.length);
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length << 1);
+        }
+        offsets[size + 1] = offset + bytes.length;
+        return new State(data, offsets, size + 1, table);
+    }
+
+    /**
+     * Returns the identifier of the given UTF-8 encoded string. Adds the string, if it is not contained yet.
+     * @param bytes
+     * @return
+     */
+    private int encode(byte[] bytes) {
+
+        // Contained
+        int id = getIndexed().get(bytes);
+        if (id != -1) {
+            return id;
+        }
+
+        synchronized (this) {
+
+            // Contained
+            State state = getIndexed();
+            int slot = state.find(bytes, 0, bytes.length);
+            if (state.table[slot] != 0) {
+                return state.table[slot] - 1;
+            }
+
+            // Store
+            state = append(state, bytes, state.table);
+            state.table[slot] = state.size;
+
+            // Grow
+            if (state.size * 2 > state.table.length) {
+                state = new State(state.data, state.offsets, state.size, state.index());
+            }
+            this.state = state;
+            return state.size - 1;
+        }
+    }
+
+    /**
+     * Returns the current state, after building the hash table, if needed
+     * @return
+     */
+    private State getIndexed() {
+        State state = this.state;
+        if (state.table != null) {
+            return state;
+        }
+        synchronized (this) {
+            state = this.state;
+            if (state.table == null) {
+                state = new State(state.data, state.offsets, state.size, state.index());
+                this.state = state;
+            }
+            return state;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+/**
+ * Specifies when changes to the cache of citations are written to disk
+ * @author Fabian Prasser
+ */
+public enum Durability {
+
+    /** Changes are written and synced to disk whenever the cache is persisted*/
+    SYNC,
+    /** Changes are written by a background thread, when enough changes have accumulated or after an interval*/
+    BATCHED,
+    /** Changes are only written when the cache is closed or the JVM shuts down*/
+    ON_CLOSE
+}
@@ -18,21 +18,62 @@ package de.linearbits.bibliometrics;
  */
 public abstract class Element {
 
-    /** Value*/
-    private final String value;
+    /** Dictionary in which the value is stored*/
+    private final Dictionary strings;
+    /** Identifier of the value*/
+    private final int        id;
+    /** Hash code of the value*/
+    private final int        hash;
 
     /**
      * Creates a new instance
-     * @param value
+     * @param strings
+     * @param id
      */
-    Element(String value) {
-        this.value = value;
+    Element(Dictionary strings, int id) {
+        this.strings = strings;
+        this.id = id;
+        this.hash = strings.hash(id);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Element other = (Element) obj;
+        if (strings == other.strings) {
+            return id == other.id;
+        }
+        return hash == other.hash && strings.equals(id, other.strings, other.id);
     }
 
     /**
      * @return the value
      */
     public String getValue() {
-        return value;
+        return strings.decode(id);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns the identifier of the value in the given dictionary. Adds the value, if needed.
+     * @param strings
+     * @return
+     */
+    int getId(Dictionary strings) {
+        return strings == this.strings ? id : strings.encode(this.strings, id);
+    }
+
+    @Override
+    public String toString() {
+        return getValue();
     }
 }
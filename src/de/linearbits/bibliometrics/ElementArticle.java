@@ -19,9 +19,10 @@ public class ElementArticle extends Element {
 
     /**
      * Creates a new instance
-     * @param value
+     * @param strings
+     * @param id
      */
-    ElementArticle(String value) {
-        super(value);
+    ElementArticle(Dictionary strings, int id) {
+        super(strings, id);
     }
 }
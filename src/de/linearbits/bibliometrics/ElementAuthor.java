@@ -19,9 +19,10 @@ public class ElementAuthor extends Element {
 
     /**
      * Creates a new instance
-     * @param value
+     * @param strings
+     * @param id
      */
-    ElementAuthor(String value) {
-        super(value);
+    ElementAuthor(Dictionary strings, int id) {
+        super(strings, id);
     }
 }
@@ -19,9 +19,10 @@ public class ElementConference extends Element {
 
     /**
      * Creates a new instance
-     * @param value
+     * @param strings
+     * @param id
      */
-    ElementConference(String value) {
-        super(value);
+    ElementConference(Dictionary strings, int id) {
+        super(strings, id);
     }
 }
@@ -19,9 +19,10 @@ public class ElementJournal extends Element {
 
     /**
      * Creates a new instance
-     * @param value
+     * @param strings
+     * @param id
      */
-    ElementJournal(String value) {
-        super(value);
+    ElementJournal(Dictionary strings, int id) {
+        super(strings, id);
     }
 }
@@ -11,37 +11,89 @@
  */
 package de.linearbits.bibliometrics;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
 
+import org.ccil.cowan.tagsoup.jaxp.SAXParserImpl;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 /**
- * The simple SAX handler for HTML documents.
+ * The simple SAX handler for HTML documents. Documents are parsed with TagSoup, directly from the
+ * given source. A handler may stop the parse as soon as it has found what it is looking for.<br>
+ * <br>
+ * To avoid work for elements and text that are not needed, a handler declares the tags it is interested
+ * in, and is only notified about elements with these tags. Attributes are passed as they are provided by
+ * the parser, without being copied. Text is only collected while a handler requests it, and is passed as
+ * one payload, with normalized whitespace, when the next element of interest starts or ends.
  *
  * @author Fabian Prasser
  */
 abstract class HTMLHandler extends DefaultHandler {
 
+    /** Thrown to stop parsing*/
+    private static final SAXException STOP       = new SAXException("Stopped");
+
+    /** Tags of interest*/
+    private final String[]            tags;
     /** The builder */
-    private StringBuilder sb = new StringBuilder();
+    private final StringBuilder       sb         = new StringBuilder();
+    /** Whether text is collected*/
+    private boolean                   collecting = false;
+    /** Whether parsing should stop*/
+    private boolean                   stopped    = false;
+
+    /**
+     * Creates a new instance
+     * @param tags Tags of interest
+     */
+    HTMLHandler(String... tags) {
+        this.tags = tags;
+    }
 
     @Override
     public void characters(final char[] ch,
                            final int start,
                            final int length) throws SAXException {
         // Append
-        sb.append(ch, start, length);
+        if (collecting) {
+            sb.append(ch, start, length);
+        }
+    }
+
+    /**
+     * Parses the given document with this handler, until its end or until {@link #stop()} is called
+     * @param source
+     * @throws IOException
+     */
+    void parse(InputSource source) throws IOException {
+        try {
+            SAXParserImpl.newInstance(null).parse(source, this);
+        } catch (SAXException e) {
+            if (e != STOP) {
+                throw new IOException("Error parsing HTML", e);
+            }
+        }
     }
 
     @Override
     public void endElement(final String uri,
                            final String localName,
                            final String qName) throws SAXException {
-        handlePayload();
-        end(localName);
+        if (isInterested(localName)) {
+            handlePayload();
+            end(localName);
+            checkStopped();
+        }
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        sb.setLength(0);
+        collecting = false;
+        stopped = false;
+        reset();
     }
 
     @Override
@@ -49,26 +101,88 @@ abstract class HTMLHandler extends DefaultHandler {
                          final String localName,
                          final String qName,
                          final Attributes attributes) throws SAXException {
-        
-        handlePayload();
-        Map<String, String> map = new HashMap<String, String>();
-        for (int i=0; i<attributes.getLength(); i++) {
-            map.put(attributes.getQName(i), attributes.getValue(i));
+        if (isInterested(localName)) {
+            handlePayload();
+            start(localName, attributes);
+            checkStopped();
         }
-        start(localName, map);
+    }
+
+    /**
+     * Sets whether text is collected and passed to {@link #payload(String)}
+     * @param collecting
+     */
+    protected void setCollecting(boolean collecting) {
+        this.collecting = collecting;
+    }
+
+    /**
+     * Stops parsing after the current callback
+     */
+    protected void stop() {
+        stopped = true;
     }
     
     /**
-     * Private handler
+     * Stops parsing, if requested
+     * @throws SAXException
+     */
+    private void checkStopped() throws SAXException {
+        if (stopped) {
+            throw STOP;
+        }
+    }
+
+    /**
+     * Private handler. Line breaks are replaced with spaces, runs of spaces are collapsed and
+     * the result is trimmed, in place.
      */
     private void handlePayload() {
-        String payload = sb.toString().replace("\r\n", " ").replace("\n", " ").replace("\r", " ").replaceAll(" +", " ").trim();
+        if (sb.length() == 0) {
+            return;
+        }
+        int length = 0;
+        boolean space = true;
+        for (int i = 0; i < sb.length(); i++) {
+            char c = sb.charAt(i);
+            if (c == ' ' || c == '\n' || c == '\r') {
+                if (!space) {
+                    sb.setCharAt(length++, ' ');
+                    space = true;
+                }
+            } else {
+                sb.setCharAt(length++, c);
+                space = false;
+            }
+        }
+        int start = 0;
+        while (start < length && sb.charAt(start) <= ' ') {
+            start++;
+        }
+        while (length > start && sb.charAt(length - 1) <= ' ') {
+            length--;
+        }
+        String payload = start == length ? null : sb.substring(start, length);
         sb.setLength(0);
-        if (payload.length() != 0) {
+        if (payload != null) {
             payload(payload);
         }
     }
 
+    /**
+     * Returns whether the given tag is of interest
+     * @param tag
+     * @return
+     */
+    private boolean isInterested(String tag) {
+        for (String interest : tags) {
+            if (interest.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * End element
      * @param tag
@@ -82,10 +196,16 @@ abstract class HTMLHandler extends DefaultHandler {
      */
     protected abstract void payload(String payload);
 
+    /**
+     * Resets the state before a document is parsed, so that a handler can be used again, e.g. when a
+     * request is retried
+     */
+    protected abstract void reset();
+
     /**
      * Start element
      * @param tag
-     * @param attributes
+     * @param attributes Only valid during the call
      */
-    protected abstract void start(String tag, Map<String, String> attributes);
+    protected abstract void start(String tag, Attributes attributes);
 }
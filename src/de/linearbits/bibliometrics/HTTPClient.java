@@ -0,0 +1,409 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * A simple HTTP client for HTML documents. Requests are sent with <code>HttpURLConnection</code>, which
+ * keeps connections alive and reuses them for further requests to the same host, once a response body has
+ * been closed. Bodies that are closed early are drained in the background by the JDK. Compressed responses
+ * (gzip, deflate) are requested, and bodies are decompressed, decoded with the charset given in the headers
+ * and parsed while they are being received, without being buffered. Every attempt
+ * passes a {@link Throttle}. Failed attempts are retried with exponential backoff, if the connection failed
+ * or the server responded with 429 or 5xx. The time spent waiting for responses and parsing them, the number of
+ * requests and retries and the bytes transferred are recorded in {@link Metrics}.<br>
+ * <br>
+ * Responses can be recorded to a {@link ResponseArchive}, and replayed from it instead of sending requests,
+ * after a configurable latency. Replayed responses pass the same steps as responses that are received.<br>
+ * <br>
+ * The client is thread-safe.
+ *
+ * @author Fabian Prasser
+ */
+class HTTPClient {
+
+    /**
+     * Counts the bytes read from a stream
+     * @author Fabian Prasser
+     */
+    private class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Creates a new instance
+         * @param in
+         */
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                metrics.bytes(1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int result = super.read(buffer, offset, length);
+            if (result > 0) {
+                metrics.bytes(result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Signals an error response
+     * @author Fabian Prasser
+     */
+    private static class StatusException extends IOException {
+
+        /** SVUID*/
+        private static final long serialVersionUID = -4412046425853707521L;
+
+        /** Status*/
+        private final int         status;
+
+        /**
+         * Creates a new instance
+         * @param url
+         * @param status
+         */
+        private StatusException(String url, int status) {
+            super("Error response " + status + " from: " + url);
+            this.status = status;
+        }
+    }
+
+    /** Charset, if none is given in the headers*/
+    private static final Charset UTF8    = Charset.forName("UTF-8");
+    /** Default timeout in milliseconds*/
+    private static final int     TIMEOUT = 4000;
+    /** Default number of retries*/
+    private static final int     RETRIES = 2;
+    /** Default delay before the first retry in milliseconds*/
+    private static final long    BACKOFF = 1000;
+    /** Maximal number of bytes that are read from error responses*/
+    private static final int     DRAIN   = 1 << 16;
+
+    /** User agent*/
+    private final String         agent;
+    /** Throttle for all attempts*/
+    private final Throttle       throttle;
+    /** Statistics*/
+    private final Metrics        metrics;
+    /** Timeout for connecting*/
+    private volatile int         connect = TIMEOUT;
+    /** Timeout for reading*/
+    private volatile int         read    = TIMEOUT;
+    /** Number of retries*/
+    private volatile int         retries = RETRIES;
+    /** Delay before the first retry, which is doubled for each further retry*/
+    private volatile long        backoff = BACKOFF;
+    /** Archive for recording or replaying responses, or null*/
+    private ResponseArchive      archive = null;
+    /** Whether responses are replayed from the archive*/
+    private boolean              replay  = false;
+    /** Latency of replayed responses*/
+    private long                 latency = 0;
+
+    /**
+     * Creates a new instance
+     * @param agent
+     * @param throttle
+     * @param metrics
+     */
+    HTTPClient(String agent, Throttle throttle, Metrics metrics) {
+        this.agent = agent;
+        this.throttle = throttle;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Parses the body of the given URL with the given handler
+     * @param url
+     * @param handler
+     * @throws IOException
+     */
+    void get(String url, HTMLHandler handler) throws IOException {
+        int attempt = 0;
+        while (true) {
+            try {
+                throttle.acquire();
+                try {
+                    request(url, handler);
+                    return;
+                } finally {
+                    throttle.release();
+                }
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= retries || !isRetryable(e)) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(backoff << attempt);
+                } catch (InterruptedException e1) {
+                    throw new InterruptedIOException("Interrupted while waiting for retry");
+                }
+                metrics.retry();
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Records all responses to the given archive, or stops recording or replaying, if the archive is null
+     * @param archive
+     */
+    synchronized void setRecording(ResponseArchive archive) {
+        this.archive = archive;
+        this.replay = false;
+    }
+
+    /**
+     * Replays all responses from the given archive after the given latency, instead of sending requests,
+     * or stops recording or replaying, if the archive is null
+     * @param archive
+     * @param latency In milliseconds
+     */
+    synchronized void setReplay(ResponseArchive archive, long latency) {
+        if (latency < 0) {
+            throw new IllegalArgumentException("Invalid latency: " + latency);
+        }
+        this.archive = archive;
+        this.replay = archive != null;
+        this.latency = latency;
+    }
+
+    /**
+     * Sets the number of retries and the delay before the first retry, which is doubled for each further retry
+     * @param retries
+     * @param backoff In milliseconds
+     */
+    void setRetries(int retries, long backoff) {
+        if (retries < 0 || backoff < 0) {
+            throw new IllegalArgumentException("Invalid retries: " + retries + ", " + backoff);
+        }
+        this.retries = retries;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Sets the timeouts
+     * @param connect In milliseconds
+     * @param read In milliseconds
+     */
+    void setTimeouts(int connect, int read) {
+        if (connect < 0 || read < 0) {
+            throw new IllegalArgumentException("Invalid timeouts: " + connect + ", " + read);
+        }
+        this.connect = connect;
+        this.read = read;
+    }
+
+    /**
+     * Reads the given stream up to a limit and closes it
+     * @param input
+     * @throws IOException
+     */
+    private void drain(InputStream input) throws IOException {
+        try {
+            byte[] buffer = new byte[1 << 13];
+            int total = 0;
+            int length;
+            while (total < DRAIN && (length = input.read(buffer)) != -1) {
+                total += length;
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the charset given in the content type, or UTF-8
+     * @param type
+     * @return
+     */
+    private Charset getCharset(String type) {
+        if (type != null) {
+            for (String parameter : type.split(";")) {
+                parameter = parameter.trim();
+                if (parameter.regionMatches(true, 0, "charset=", 0, 8)) {
+                    try {
+                        return Charset.forName(parameter.substring(8).replace("\"", "").trim());
+                    } catch (IllegalArgumentException e) {
+                        // Unknown charset
+                    }
+                }
+            }
+        }
+        return UTF8;
+    }
+
+    /**
+     * Returns whether the given error may be resolved by retrying, which is not the case for errors
+     * of the parser
+     * @param e
+     * @return
+     */
+    private boolean isRetryable(IOException e) {
+        if (e instanceof StatusException) {
+            int status = ((StatusException) e).status;
+            return status == 429 || status >= 500;
+        }
+        return !(e.getCause() instanceof SAXException);
+    }
+
+    /**
+     * Decompresses, decodes and parses the given body, and closes it
+     * @param input
+     * @param type
+     * @param encoding
+     * @param handler
+     * @throws IOException
+     */
+    private void parse(InputStream input, String type, String encoding, HTMLHandler handler) throws IOException {
+        long start = metrics.start();
+        try {
+            if ("gzip".equalsIgnoreCase(encoding)) {
+                input = new GZIPInputStream(input);
+            } else if ("deflate".equalsIgnoreCase(encoding)) {
+                input = new InflaterInputStream(input);
+            }
+            handler.parse(new InputSource(new InputStreamReader(input, getCharset(type))));
+        } finally {
+            input.close();
+            metrics.stop(Stage.HTML, start);
+        }
+    }
+
+    /**
+     * Reads the given stream completely and closes it
+     * @param input
+     * @return
+     * @throws IOException
+     */
+    private byte[] read(InputStream input) throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 13];
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Replays the response for the given URL from the given archive
+     * @param archive
+     * @param url
+     * @param handler
+     * @throws IOException
+     */
+    private void replay(ResponseArchive archive, String url, HTMLHandler handler) throws IOException {
+        ResponseArchive.Response response = archive.get(url);
+        if (response == null) {
+            throw new StatusException(url, 404);
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while replaying");
+        }
+        parse(new ByteArrayInputStream(response.getBody()), response.getType(), response.getEncoding(), handler);
+    }
+
+    /**
+     * Performs one attempt
+     * @param url
+     * @param handler
+     * @throws IOException
+     */
+    private void request(String url, HTMLHandler handler) throws IOException {
+
+        // Replay
+        ResponseArchive archive;
+        boolean replay;
+        synchronized (this) {
+            archive = this.archive;
+            replay = this.replay;
+        }
+        if (replay) {
+            replay(archive, url, handler);
+            return;
+        }
+
+        // Request
+        metrics.request();
+        long start = metrics.start();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connect);
+        connection.setReadTimeout(read);
+        connection.setRequestProperty("User-Agent", agent);
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+
+        // Wait for the headers
+        int status;
+        try {
+            status = connection.getResponseCode();
+        } finally {
+            metrics.stop(Stage.HTTP, start);
+        }
+
+        // Read error responses to the end, so that the connection can be reused. Closing them before
+        // drops the connection, which is also done for large bodies.
+        if (status >= 400) {
+            InputStream error = connection.getErrorStream();
+            if (error != null) {
+                drain(error);
+            }
+            throw new StatusException(url, status);
+        }
+
+        // Record
+        InputStream input = new CountingInputStream(connection.getInputStream());
+        String type = connection.getContentType();
+        String encoding = connection.getContentEncoding();
+        if (archive != null) {
+            byte[] body = read(input);
+            archive.put(url, new ResponseArchive.Response(type, encoding, body));
+            input = new ByteArrayInputStream(body);
+        }
+
+        // Parse
+        parse(input, type, encoding, handler);
+    }
+}
@@ -0,0 +1,806 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact, persistent index over the records of the DBLP XML dump. Each record is stored
+ * with its type, venue, year, title and authors as references into a sorted dictionary of
+ * distinct strings. The index remembers size and modification time of the dump it was built
+ * from and is considered stale as soon as one of them changes.
+ *
+ * @author Fabian Prasser
+ */
+class IndexDBLP {
+
+    /**
+     * Builds an index from a stream of records. Optionally, the builder is based on the
+     * dictionary of an existing index, so that records of that index can be copied without
+     * decoding and encoding their strings.
+     * @author Fabian Prasser
+     */
+    static class Builder implements ReaderDBLP.RecordListener {
+
+        /** Sorted dictionary of the existing index*/
+        private final Dictionary           base;
+        /** Dictionary of strings that are not contained in the base dictionary*/
+        private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+        /** Column*/
+        private final IntList              type       = new IntList();
+        /** Column*/
+        private final IntList              key        = new IntList();
+        /** Column, not encoded*/
+        private final IntList              mdate      = new IntList();
+        /** Column*/
+        private final IntList              journal    = new IntList();
+        /** Column*/
+        private final IntList              booktitle  = new IntList();
+        /** Column*/
+        private final IntList              year       = new IntList();
+        /** Column*/
+        private final IntList              title      = new IntList();
+        /** Offsets into the list of authors*/
+        private final IntList              offsets    = new IntList();
+        /** Authors*/
+        private final IntList              authors    = new IntList();
+
+        /**
+         * Creates a new instance
+         */
+        Builder() {
+            this(new Dictionary());
+        }
+
+        /**
+         * Creates a new instance based on the given sorted dictionary
+         * @param base
+         */
+        private Builder(Dictionary base) {
+            this.base = base;
+            this.offsets.add(0);
+        }
+
+        @Override
+        public boolean accept(RecordDBLP record) {
+            return true;
+        }
+
+        @Override
+        public void record(RecordDBLP record) {
+            type.add(encode(record.getType()));
+            key.add(encode(record.getKey()));
+            mdate.add(record.getMdate());
+            journal.add(encode(record.getJournal()));
+            booktitle.add(encode(record.getBooktitle()));
+            year.add(encode(record.getYear()));
+            title.add(encode(record.getTitle()));
+            for (String author : record.getAuthors()) {
+                authors.add(encode(author));
+            }
+            offsets.add(authors.size());
+        }
+
+        /**
+         * Adds a record of the index whose dictionary this builder is based on
+         * @param index
+         * @param record
+         */
+        void add(IndexDBLP index, int record) {
+            type.add(index.type[record]);
+            key.add(index.key[record]);
+            mdate.add(index.mdate[record]);
+            journal.add(index.journal[record]);
+            booktitle.add(index.booktitle[record]);
+            year.add(index.year[record]);
+            title.add(index.title[record]);
+            for (int i = index.offsets[record]; i < index.offsets[record + 1]; i++) {
+                authors.add(index.authors[i]);
+            }
+            offsets.add(authors.size());
+        }
+
+        /**
+         * Creates the index
+         * @param source
+         * @return
+         */
+        IndexDBLP build(File source) {
+
+            // Strings that are in use
+            BitSet used = new BitSet(base.size() + dictionary.size());
+            for (IntList column : new IntList[] { type, key, journal, booktitle, year, title, authors }) {
+                for (int i = 0; i < column.size(); i++) {
+                    if (column.get(i) != -1) {
+                        used.set(column.get(i));
+                    }
+                }
+            }
+
+            // Merge the sorted base dictionary with the sorted new strings
+            String[] added = dictionary.keySet().toArray(new String[dictionary.size()]);
+            Arrays.sort(added);
+            Dictionary strings = new Dictionary(used.cardinality());
+            int[] remap = new int[base.size() + added.length];
+            int i = used.nextSetBit(0);
+            String current = i != -1 && i < base.size() ? base.decode(i) : null;
+            int j = 0;
+            while (current != null || j < added.length) {
+                if (j == added.length || (current != null && current.compareTo(added[j]) < 0)) {
+                    remap[i] = strings.append(base, i);
+                    i = used.nextSetBit(i + 1);
+                    current = i != -1 && i < base.size() ? base.decode(i) : null;
+                } else {
+                    remap[dictionary.get(added[j])] = strings.append(added[j]);
+                    j++;
+                }
+            }
+
+            // Create
+            return new IndexDBLP(source.length(),
+                                 source.lastModified(),
+                                 strings,
+                                 remap(type, remap),
+                                 remap(key, remap),
+                                 mdate.toArray(),
+                                 remap(journal, remap),
+                                 remap(booktitle, remap),
+                                 remap(year, remap),
+                                 remap(title, remap),
+                                 offsets.toArray(),
+                                 remap(authors, remap));
+        }
+
+        /**
+         * Returns the temporary identifier of the given string
+         * @param value
+         * @return
+         */
+        private int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            int id = base.lookup(value);
+            if (id >= 0) {
+                return id;
+            }
+            Integer added = dictionary.get(value);
+            if (added == null) {
+                added = base.size() + dictionary.size();
+                dictionary.put(value, added);
+            }
+            return added;
+        }
+
+        /**
+         * Maps temporary identifiers to identifiers in the sorted dictionary
+         * @param list
+         * @param remap
+         * @return
+         */
+        private int[] remap(IntList list, int[] remap) {
+            int[] result = list.toArray();
+            for (int i = 0; i < result.length; i++) {
+                if (result[i] != -1) {
+                    result[i] = remap[result[i]];
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Derives a new index from an existing index and the records of a newer version of the dump.
+     * Records with the same key and mdate as in the existing index are not read from the dump,
+     * but copied from the existing index.
+     * @author Fabian Prasser
+     */
+    static class Updater implements ReaderDBLP.RecordListener {
+
+        /** Existing index*/
+        private final IndexDBLP   index;
+        /** Builder for the new index*/
+        private final Builder     builder;
+        /** Records of the existing index that are also contained in the new version*/
+        private final BitSet      retained = new BitSet();
+        /** Titles that have been changed or removed*/
+        private final Set<String> titles   = new HashSet<String>();
+
+        /**
+         * Creates a new instance
+         * @param index
+         */
+        Updater(IndexDBLP index) {
+            this.index = index;
+            this.index.indexKeys();
+            this.builder = new Builder(index.strings);
+        }
+
+        @Override
+        public boolean accept(RecordDBLP record) {
+            int previous = index.find(record.getKey());
+            return previous == -1 || index.mdate[previous] != record.getMdate();
+        }
+
+        @Override
+        public void record(RecordDBLP record) {
+            int previous = index.find(record.getKey());
+            if (!record.isComplete()) {
+                builder.add(index, previous);
+                retained.set(previous);
+            } else if (previous != -1) {
+                builder.record(record);
+                retained.set(previous);
+                String title = index.decode(index.title[previous]);
+                if (title != null && !title.equals(record.getTitle())) {
+                    titles.add(title);
+                }
+            } else {
+                builder.record(record);
+            }
+        }
+
+        /**
+         * Creates the new index
+         * @param source
+         * @return
+         */
+        IndexDBLP build(File source) {
+
+            // Removed records
+            for (int record = retained.nextClearBit(0); record < index.size(); record = retained.nextClearBit(record + 1)) {
+                String title = index.decode(index.title[record]);
+                if (title != null) {
+                    titles.add(title);
+                }
+            }
+
+            // Build and keep only titles that have disappeared
+            IndexDBLP result = builder.build(source);
+            titles.removeAll(result.collect("title"));
+            return result;
+        }
+
+        /**
+         * Returns titles that were contained in the existing index but are not contained in the new index.
+         * Only valid after the new index has been built.
+         * @return
+         */
+        Set<String> getTitles() {
+            return titles;
+        }
+    }
+
+    /**
+     * Queries on one venue field, grouped by venue
+     * @author Fabian Prasser
+     */
+    private static class QueryGroup {
+
+        /** Column of the venue field*/
+        private final int[]                       column;
+        /** Venues queried*/
+        private final BitSet                      venues  = new BitSet();
+        /** Queries by venue*/
+        private final Map<Integer, List<Integer>> queries = new HashMap<Integer, List<Integer>>();
+
+        /**
+         * Creates a new instance
+         * @param column
+         */
+        QueryGroup(int[] column) {
+            this.column = column;
+        }
+
+        /**
+         * Adds a query
+         * @param venue
+         * @param query
+         */
+        void add(int venue, int query) {
+            List<Integer> list = queries.get(venue);
+            if (list == null) {
+                list = new ArrayList<Integer>();
+                queries.put(venue, list);
+            }
+            list.add(query);
+            venues.set(venue);
+        }
+    }
+
+    /** Magic number*/
+    private static final int MAGIC   = 0x44424C50;
+    /** Version of the file format*/
+    private static final int VERSION = 3;
+
+    /**
+     * Loads the index from the given file. Returns null if the file does not exist, is
+     * corrupt or has been built from a different version of the source. If the source is
+     * null, the version is not checked.
+     * @param file
+     * @param source
+     * @return
+     */
+    static IndexDBLP load(File file, File source) {
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long length = in.readLong();
+            long modified = in.readLong();
+            if (source != null && (length != source.length() || modified != source.lastModified())) {
+                return null;
+            }
+            Dictionary strings = Dictionary.read(in);
+            int records = in.readInt();
+            int[] type = read(in, records);
+            int[] key = read(in, records);
+            int[] mdate = read(in, records);
+            int[] journal = read(in, records);
+            int[] booktitle = read(in, records);
+            int[] year = read(in, records);
+            int[] title = read(in, records);
+            int[] offsets = read(in, records + 1);
+            int[] authors = read(in, offsets[records]);
+            return new IndexDBLP(length, modified, strings, type, key, mdate, journal, booktitle, year, title, offsets, authors);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Closes the stream, ignoring errors
+     * @param in
+     */
+    private static void close(DataInputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Reads an array
+     * @param in
+     * @param length
+     * @return
+     * @throws IOException
+     */
+    private static int[] read(DataInputStream in, int length) throws IOException {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = in.readInt();
+        }
+        return result;
+    }
+
+    /**
+     * Writes an array
+     * @param out
+     * @param array
+     * @throws IOException
+     */
+    private static void write(DataOutputStream out, int[] array) throws IOException {
+        for (int value : array) {
+            out.writeInt(value);
+        }
+    }
+
+    /** Size of the source*/
+    private final long       length;
+    /** Modification time of the source*/
+    private final long       modified;
+    /** Sorted dictionary*/
+    private final Dictionary strings;
+    /** Column*/
+    private final int[]      type;
+    /** Column*/
+    private final int[]      key;
+    /** Column, not encoded*/
+    private final int[]      mdate;
+    /** Column*/
+    private final int[]      journal;
+    /** Column*/
+    private final int[]      booktitle;
+    /** Column*/
+    private final int[]      year;
+    /** Column*/
+    private final int[]      title;
+    /** Offsets into the list of authors*/
+    private final int[]      offsets;
+    /** Authors*/
+    private final int[]      authors;
+    /** Records by key, only built for updates*/
+    private int[]            keys;
+    /** Offsets into the publications, by author, built lazily*/
+    private int[]            publicationOffsets;
+    /** Records by author*/
+    private int[]            publications;
+
+    /**
+     * Creates a new instance
+     * @param length
+     * @param modified
+     * @param strings
+     * @param type
+     * @param key
+     * @param mdate
+     * @param journal
+     * @param booktitle
+     * @param year
+     * @param title
+     * @param offsets
+     * @param authors
+     */
+    private IndexDBLP(long length, long modified, Dictionary strings,
+                      int[] type, int[] key, int[] mdate, int[] journal, int[] booktitle, int[] year, int[] title,
+                      int[] offsets, int[] authors) {
+        this.length = length;
+        this.modified = modified;
+        this.strings = strings;
+        this.type = type;
+        this.key = key;
+        this.mdate = mdate;
+        this.journal = journal;
+        this.booktitle = booktitle;
+        this.year = year;
+        this.title = title;
+        this.offsets = offsets;
+        this.authors = authors;
+    }
+
+    /**
+     * Returns all distinct values of the given field. Returns null if the field is not indexed.
+     * @param field
+     * @return
+     */
+    Set<String> collect(String field) {
+        BitSet ids = getIdentifiers(field);
+        return ids == null ? null : decode(ids);
+    }
+
+    /**
+     * Returns the values of field <code>tag3</code> of all records of type <code>tag4</code> in which
+     * field <code>tag1</code> equals <code>value1</code> and field <code>tag2</code> equals <code>value2</code>.
+     * Returns null if one of the fields is not indexed.
+     * @param tag1
+     * @param value1
+     * @param tag2
+     * @param value2
+     * @param tag3
+     * @param tag4
+     * @return
+     */
+    Set<String> collect(String tag1, String value1, String tag2, String value2, String tag3, String tag4) {
+
+        if (!RecordDBLP.isSingleValued(tag1) || !RecordDBLP.isSingleValued(tag2) || !RecordDBLP.isSupported(tag3)) {
+            return null;
+        }
+
+        int id1 = lookup(value1);
+        int id2 = lookup(value2);
+        int id4 = lookup(tag4);
+        if (id1 < 0 || id2 < 0 || id4 < 0) {
+            return new HashSet<String>();
+        }
+
+        int[] column1 = column(tag1);
+        int[] column2 = column(tag2);
+        BitSet ids = new BitSet(strings.size());
+        for (int record = 0; record < type.length; record++) {
+            if (type[record] == id4 && column1[record] == id1 && column2[record] == id2) {
+                if (tag3.equals("author")) {
+                    for (int i = offsets[record]; i < offsets[record + 1]; i++) {
+                        ids.set(authors[i]);
+                    }
+                } else {
+                    int id = column(tag3)[record];
+                    if (id != -1) {
+                        ids.set(id);
+                    }
+                }
+            }
+        }
+        return decode(ids);
+    }
+
+    /**
+     * Answers all given queries in one pass over the index
+     * @param queries
+     */
+    void collect(List<QueryDBLP> queries) {
+
+        // Prepare
+        int[] types = new int[queries.size()];
+        int[] years = new int[queries.size()];
+        Map<String, QueryGroup> groups = new HashMap<String, QueryGroup>();
+        for (int i = 0; i < queries.size(); i++) {
+            QueryDBLP query = queries.get(i);
+            types[i] = lookup(query.getType());
+            years[i] = lookup(query.getYear());
+            int venue = lookup(query.getValue());
+            if (types[i] >= 0 && years[i] >= 0 && venue >= 0) {
+                QueryGroup group = groups.get(query.getField());
+                if (group == null) {
+                    group = new QueryGroup(column(query.getField()));
+                    groups.put(query.getField(), group);
+                }
+                group.add(venue, i);
+            }
+        }
+
+        // Scan
+        for (QueryGroup group : groups.values()) {
+            for (int record = 0; record < type.length; record++) {
+                int venue = group.column[record];
+                if (venue != -1 && group.venues.get(venue)) {
+                    for (int i : group.queries.get(venue)) {
+                        if (types[i] == type[record] && years[i] == year[record] && title[record] != -1) {
+                            queries.get(i).add(strings.decode(title[record]));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers all given queries for the publications of authors
+     * @param queries
+     */
+    void collectPublications(List<QueryAuthor> queries) {
+        synchronized (this) {
+            if (publications == null) {
+                indexPublications();
+            }
+        }
+        for (QueryAuthor query : queries) {
+            int author = lookup(query.getAuthor());
+            if (author >= 0) {
+                for (int i = publicationOffsets[author]; i < publicationOffsets[author + 1]; i++) {
+                    int record = publications[i];
+                    query.add(decode(year[record]), decode(title[record]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the identifiers of all distinct values of the given field, in ascending order, which is
+     * the order of the values. Returns null if the field is not indexed.
+     * @param field
+     * @return
+     */
+    int[] getValues(String field) {
+        BitSet ids = getIdentifiers(field);
+        if (ids == null) {
+            return null;
+        }
+        int[] result = new int[ids.cardinality()];
+        int index = 0;
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result[index++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the dictionary
+     * @return
+     */
+    Dictionary getStrings() {
+        return strings;
+    }
+
+    /**
+     * Returns whether this index has been built from the given version of the source
+     * @param source
+     * @return
+     */
+    boolean isCurrent(File source) {
+        return length == source.length() && modified == source.lastModified();
+    }
+
+    /**
+     * Returns the number of records
+     * @return
+     */
+    int size() {
+        return type.length;
+    }
+
+    /**
+     * Writes the index to the given file. The file is replaced atomically.
+     * @param file
+     * @throws IOException
+     */
+    void write(File file) throws IOException {
+
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(modified);
+            strings.write(out);
+            out.writeInt(type.length);
+            write(out, type);
+            write(out, key);
+            write(out, mdate);
+            write(out, journal);
+            write(out, booktitle);
+            write(out, year);
+            write(out, title);
+            write(out, offsets);
+            write(out, authors);
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace index: " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot write index: " + file);
+        }
+    }
+
+    /**
+     * Returns the column for the given single-valued field
+     * @param field
+     * @return
+     */
+    private int[] column(String field) {
+        if (field.equals("journal")) {
+            return journal;
+        } else if (field.equals("booktitle")) {
+            return booktitle;
+        } else if (field.equals("year")) {
+            return year;
+        } else if (field.equals("title")) {
+            return title;
+        } else {
+            throw new IllegalArgumentException("Unsupported field: " + field);
+        }
+    }
+
+    /**
+     * Returns the string with the given identifier, or null
+     * @param id
+     * @return
+     */
+    private String decode(int id) {
+        return id == -1 ? null : strings.decode(id);
+    }
+
+    /**
+     * Returns the strings with the given identifiers
+     * @param ids
+     * @return
+     */
+    private Set<String> decode(BitSet ids) {
+        Set<String> result = new HashSet<String>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result.add(strings.decode(id));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the record with the given key, or -1. Requires {@link #indexKeys()}.
+     * @param key
+     * @return
+     */
+    private int find(String key) {
+        int id = lookup(key);
+        return id < 0 ? -1 : keys[id];
+    }
+
+    /**
+     * Returns the identifiers of all distinct values of the given field, or null if the field is not indexed
+     * @param field
+     * @return
+     */
+    private BitSet getIdentifiers(String field) {
+
+        if (!RecordDBLP.isSupported(field)) {
+            return null;
+        }
+
+        BitSet ids = new BitSet(strings.size());
+        if (field.equals("author")) {
+            for (int id : authors) {
+                ids.set(id);
+            }
+        } else {
+            for (int id : column(field)) {
+                if (id != -1) {
+                    ids.set(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Builds the posting lists that map authors to their records, which are needed by
+     * {@link #collectPublications(List)}. Records are listed in ascending order.
+     */
+    private void indexPublications() {
+        int[] offsets = new int[strings.size() + 1];
+        for (int author : authors) {
+            offsets[author + 1]++;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        int[] publications = new int[authors.length];
+        int[] next = Arrays.copyOf(offsets, strings.size());
+        for (int record = 0; record < type.length; record++) {
+            for (int i = this.offsets[record]; i < this.offsets[record + 1]; i++) {
+                publications[next[authors[i]]++] = record;
+            }
+        }
+        this.publicationOffsets = offsets;
+        this.publications = publications;
+    }
+
+    /**
+     * Builds the mapping from keys to records, which is needed by {@link #find(String)}
+     */
+    private void indexKeys() {
+        keys = new int[strings.size()];
+        Arrays.fill(keys, -1);
+        for (int record = 0; record < key.length; record++) {
+            if (key[record] != -1) {
+                keys[key[record]] = record;
+            }
+        }
+    }
+
+    /**
+     * Returns the identifier of the given string, or a negative value
+     * @param value
+     * @return
+     */
+    private int lookup(String value) {
+        return value == null ? -1 : strings.lookup(value);
+    }
+}
@@ -0,0 +1,301 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An inverted index of trigrams for substring and prefix queries over a set of strings from a
+ * dictionary. Trigrams are packed into longs and map to sorted posting lists of positions in
+ * the set of strings, which are stored in one primitive array. Strings are padded before they
+ * are indexed, so that every character starts a trigram, and queries with less than three characters
+ * are answered from the range of trigrams that start with the query.
+ *
+ * @author Fabian Prasser
+ */
+class IndexNGram {
+
+    /** Length of the n-grams*/
+    private static final int     N    = 3;
+    /** Padding appended to strings before indexing*/
+    private static final String  PAD  = "\0\0";
+    /** Charset*/
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Returns the distinct trigrams of the given string
+     * @param value
+     * @return
+     */
+    private static long[] getGrams(String value) {
+        if (value.length() < N) {
+            return new long[0];
+        }
+        long[] grams = new long[value.length() - N + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int size = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (size == 0 || grams[size - 1] != grams[i]) {
+                grams[size++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, size);
+    }
+
+    /** Dictionary*/
+    private final Dictionary strings;
+    /** Identifiers of the strings, in the order of the strings*/
+    private final int[]      values;
+    /** Sorted trigrams*/
+    private final long[]     grams;
+    /** Offsets into the postings, per trigram*/
+    private final int[]      offsets;
+    /** Posting lists*/
+    private final int[]      postings;
+
+    /**
+     * Creates a new instance
+     * @param strings
+     * @param values Identifiers of strings from the dictionary, in the order of the strings
+     */
+    IndexNGram(Dictionary strings, int[] values) {
+
+        this.strings = strings;
+        this.values = values;
+
+        // Assign temporary identifiers to trigrams with an open-addressing hash table
+        long[] keys = new long[1 << 16];
+        int[] identifiers = new int[keys.length];
+        IntList counts = new IntList();
+        for (int value : this.values) {
+            for (long gram : getGrams(strings.decode(value) + PAD)) {
+                int slot = find(keys, gram);
+                if (keys[slot] == 0) {
+                    keys[slot] = gram + 1;
+                    identifiers[slot] = counts.size();
+                    counts.add(0);
+                    if (counts.size() * 2 > keys.length) {
+                        long[] oldKeys = keys;
+                        int[] oldIdentifiers = identifiers;
+                        keys = new long[oldKeys.length * 2];
+                        identifiers = new int[keys.length];
+                        for (int i = 0; i < oldKeys.length; i++) {
+                            if (oldKeys[i] != 0) {
+                                int target = find(keys, oldKeys[i] - 1);
+                                keys[target] = oldKeys[i];
+                                identifiers[target] = oldIdentifiers[i];
+                            }
+                        }
+                    }
+                    slot = find(keys, gram);
+                }
+                int identifier = identifiers[slot];
+                counts.set(identifier, counts.get(identifier) + 1);
+            }
+        }
+
+        // Sort trigrams and compute offsets. Temporary identifiers are replaced by positions.
+        this.grams = new long[counts.size()];
+        int size = 0;
+        for (long key : keys) {
+            if (key != 0) {
+                this.grams[size++] = key - 1;
+            }
+        }
+        Arrays.sort(this.grams);
+        this.offsets = new int[this.grams.length + 1];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                int position = Arrays.binarySearch(this.grams, keys[i] - 1);
+                offsets[position + 1] = counts.get(identifiers[i]);
+                identifiers[i] = position;
+            }
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+
+        // Fill postings, which are sorted because values are processed in order
+        this.postings = new int[offsets[offsets.length - 1]];
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        for (int i = 0; i < this.values.length; i++) {
+            for (long gram : getGrams(strings.decode(this.values[i]) + PAD)) {
+                postings[next[identifiers[find(keys, gram)]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Returns all strings that contain the given value, in sorted order
+     * @param value
+     * @return
+     */
+    List<String> find(String value) {
+
+        List<String> result = new ArrayList<String>();
+
+        // Short queries are answered from the union of the posting lists of all trigrams that start with them
+        long[] grams = getGrams(value);
+        if (grams.length == 0) {
+            if (value.length() == 0) {
+                for (int id : values) {
+                    result.add(strings.decode(id));
+                }
+                return result;
+            }
+            long low = 0;
+            long high = 0;
+            for (int i = 0; i < N; i++) {
+                low = (low << 16) | (i < value.length() ? value.charAt(i) : 0);
+                high = (high << 16) | (i < value.length() ? value.charAt(i) : 0xFFFF);
+            }
+            BitSet matches = new BitSet(values.length);
+            int index = Arrays.binarySearch(this.grams, low);
+            for (int gram = index < 0 ? -index - 1 : index; gram < this.grams.length && this.grams[gram] <= high; gram++) {
+                for (int p = offsets[gram]; p < offsets[gram + 1]; p++) {
+                    matches.set(postings[p]);
+                }
+            }
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                result.add(strings.decode(values[i]));
+            }
+            return result;
+        }
+
+        // Find posting lists, starting with the shortest one
+        int[] lists = new int[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            int index = Arrays.binarySearch(this.grams, grams[i]);
+            if (index < 0) {
+                return result;
+            }
+            lists[i] = index;
+        }
+        for (int i = 1; i < lists.length; i++) {
+            for (int j = i; j > 0 && length(lists[j]) < length(lists[j - 1]); j--) {
+                int temp = lists[j];
+                lists[j] = lists[j - 1];
+                lists[j - 1] = temp;
+            }
+        }
+
+        // Intersect and verify
+        byte[] bytes = value.getBytes(UTF8);
+        int[] positions = new int[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            positions[i] = offsets[lists[i]];
+        }
+        for (int p = offsets[lists[0]]; p < offsets[lists[0] + 1]; p++) {
+            int candidate = postings[p];
+            boolean contained = true;
+            for (int i = 1; i < lists.length && contained; i++) {
+                int end = offsets[lists[i] + 1];
+                positions[i] = seek(positions[i], end, candidate);
+                contained = positions[i] < end && postings[positions[i]] == candidate;
+            }
+            if (contained && strings.contains(values[candidate], bytes)) {
+                result.add(strings.decode(values[candidate]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all strings that start with the given value, in sorted order
+     * @param value
+     * @return
+     */
+    List<String> findPrefix(String value) {
+
+        // Find the first string that is not smaller
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (strings.decode(values[middle]).compareTo(value) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        // Collect
+        byte[] bytes = value.getBytes(UTF8);
+        List<String> result = new ArrayList<String>();
+        while (low < values.length && strings.startsWith(values[low], bytes)) {
+            result.add(strings.decode(values[low++]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the slot of the given trigram in the given hash table, or the empty slot at which it
+     * would be inserted. Keys are stored incremented by one, so that zero marks empty slots. The slot is
+     * taken from the high bits of a multiplicative hash, as many as needed for the size of the table.
+     * @param keys
+     * @param gram
+     * @return
+     */
+    private static int find(long[] keys, long gram) {
+        long key = gram + 1;
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(keys.length)));
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the length of the posting list of the given trigram
+     * @param gram
+     * @return
+     */
+    private int length(int gram) {
+        return offsets[gram + 1] - offsets[gram];
+    }
+
+    /**
+     * Returns the first position in the postings, starting at the given position, that
+     * contains a value larger than or equal to the given value. Uses exponential search.
+     * @param position
+     * @param end
+     * @param value
+     * @return
+     */
+    private int seek(int position, int end, int value) {
+        int step = 1;
+        int low = position;
+        while (position < end && postings[position] < value) {
+            low = position + 1;
+            position += step;
+            step <<= 1;
+        }
+        int high = Math.min(position, end);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (postings[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
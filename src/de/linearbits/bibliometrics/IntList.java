@@ -0,0 +1,87 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive integers
+ *
+ * @author Fabian Prasser
+ */
+class IntList {
+
+    /** Data*/
+    private int[] data;
+    /** Size*/
+    private int   size = 0;
+
+    /**
+     * Creates a new instance
+     */
+    IntList() {
+        this(16);
+    }
+
+    /**
+     * Creates a new instance
+     * @param capacity
+     */
+    IntList(int capacity) {
+        this.data = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Adds a value
+     * @param value
+     */
+    void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length << 1);
+        }
+        data[size++] = value;
+    }
+
+    /**
+     * Returns the value at the given index
+     * @param index
+     * @return
+     */
+    int get(int index) {
+        return data[index];
+    }
+
+    /**
+     * Sets the value at the given index
+     * @param index
+     * @param value
+     */
+    void set(int index, int value) {
+        data[index] = value;
+    }
+
+    /**
+     * Returns the size
+     * @return
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a trimmed copy of the data
+     * @return
+     */
+    int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
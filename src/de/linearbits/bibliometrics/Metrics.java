@@ -0,0 +1,259 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects statistics about computations: the time spent in each {@link Stage} and counters for the cache
+ * and for requests. Collecting is disabled by default. When disabled, measuring a stage costs a read of a
+ * volatile flag and counters are not touched. The collector is thread-safe.<br>
+ * <br>
+ * Snapshots and resets are best-effort while measurements are running: each value is read or reset
+ * atomically, but not all of them at once. A snapshot may thus include a measurement in the count of a
+ * stage, but not yet in its total, and a measurement that races with a reset may be partially retained.
+ * Snapshots are exact once no measurements are running.
+ *
+ * @author Fabian Prasser
+ */
+class Metrics implements StatisticsMXBean {
+
+    /**
+     * Measures the time spent in a stage
+     * @author Fabian Prasser
+     */
+    private static class Timer {
+
+        /** Number of measurements*/
+        private final AtomicLong      count     = new AtomicLong();
+        /** Total duration*/
+        private final AtomicLong      total     = new AtomicLong();
+        /** Maximal duration*/
+        private final AtomicLong      maximum   = new AtomicLong();
+        /** Histogram*/
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        /**
+         * Adds a measurement
+         * @param duration In nanoseconds
+         */
+        private void add(long duration) {
+            count.incrementAndGet();
+            total.addAndGet(duration);
+            histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(duration / 1000L)));
+            long current = maximum.get();
+            while (duration > current && !maximum.compareAndSet(current, duration)) {
+                current = maximum.get();
+            }
+        }
+
+        /**
+         * Resets all values in place
+         */
+        private void reset() {
+            count.set(0);
+            total.set(0);
+            maximum.set(0);
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram.set(i, 0);
+            }
+        }
+
+        /**
+         * Returns a snapshot
+         * @param stage
+         * @return
+         */
+        private StageStatistics get(Stage stage) {
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = histogram.get(i);
+            }
+            return new StageStatistics(stage, count.get(), total.get(), maximum.get(), buckets);
+        }
+    }
+
+    /** Number of buckets of histograms*/
+    private static final int  BUCKETS  = 32;
+    /** Start of a measurement while disabled*/
+    private static final long DISABLED = Long.MIN_VALUE;
+
+    /** Whether statistics are collected*/
+    private volatile boolean  enabled  = false;
+    /** Timers, by stage*/
+    private final Timer[]     timers   = new Timer[Stage.values().length];
+    /** Counts that have been found in the cache*/
+    private final AtomicLong  hits     = new AtomicLong();
+    /** Counts that have not been found in the cache*/
+    private final AtomicLong  misses   = new AtomicLong();
+    /** Requests*/
+    private final AtomicLong  requests = new AtomicLong();
+    /** Retries*/
+    private final AtomicLong  retries  = new AtomicLong();
+    /** Captchas*/
+    private final AtomicLong  captchas = new AtomicLong();
+    /** Bytes received*/
+    private final AtomicLong  bytes    = new AtomicLong();
+
+    /**
+     * Creates a new instance
+     */
+    Metrics() {
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new Timer();
+        }
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getCaptchas() {
+        return captchas.get();
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.get();
+    }
+
+    @Override
+    public Map<String, StageStatistics> getStages() {
+        Map<String, StageStatistics> result = new LinkedHashMap<String, StageStatistics>();
+        for (StageStatistics stage : getStatistics().getStages().values()) {
+            result.put(stage.getStage().name(), stage);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (Timer timer : timers) {
+            timer.reset();
+        }
+        hits.set(0);
+        misses.set(0);
+        requests.set(0);
+        retries.set(0);
+        captchas.set(0);
+        bytes.set(0);
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Counts the given number of bytes received
+     * @param count
+     */
+    void bytes(long count) {
+        if (enabled) {
+            bytes.addAndGet(count);
+        }
+    }
+
+    /**
+     * Counts a captcha
+     */
+    void captcha() {
+        if (enabled) {
+            captchas.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a snapshot of all statistics, which is not atomic while measurements are running
+     * @return
+     */
+    synchronized Statistics getStatistics() {
+        Map<Stage, StageStatistics> stages = new EnumMap<Stage, StageStatistics>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, timers[stage.ordinal()].get(stage));
+        }
+        return new Statistics(stages, hits.get(), misses.get(), requests.get(), retries.get(), captchas.get(), bytes.get());
+    }
+
+    /**
+     * Counts a lookup in the cache
+     * @param hit
+     */
+    void lookup(boolean hit) {
+        if (enabled) {
+            (hit ? hits : misses).incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a request
+     */
+    void request() {
+        if (enabled) {
+            requests.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a retry
+     */
+    void retry() {
+        if (enabled) {
+            retries.incrementAndGet();
+        }
+    }
+
+    /**
+     * Starts measuring a stage
+     * @return The start, which is to be passed to {@link #stop(Stage, long)}
+     */
+    long start() {
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * Stops measuring the given stage
+     * @param stage
+     * @param start The value returned by {@link #start()}
+     */
+    void stop(Stage stage, long start) {
+        if (start != DISABLED) {
+            timers[stage.ordinal()].add(System.nanoTime() - start);
+        }
+    }
+}
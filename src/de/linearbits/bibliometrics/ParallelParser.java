@@ -0,0 +1,308 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses the DBLP XML dump with multiple threads. The dump is split into byte ranges that are
+ * aligned on the boundaries of top-level records. Each range is wrapped into the prolog of the
+ * dump, which contains the reference to the DTD, and parsed by a separate handler on a fork-join
+ * pool, using the given parser engine. The results are merged in document order.
+ *
+ * @author Fabian Prasser
+ */
+class ParallelParser {
+
+    /**
+     * Reads a range of a file
+     * @author Fabian Prasser
+     */
+    private static class RangeInputStream extends InputStream {
+
+        /** Channel*/
+        private final FileChannel channel;
+        /** Position*/
+        private long              position;
+        /** End*/
+        private final long        end;
+
+        /**
+         * Creates a new instance
+         * @param channel
+         * @param start
+         * @param end
+         */
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] buffer = new byte[1];
+            return read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            length = (int) Math.min(length, end - position);
+            int read = channel.read(ByteBuffer.wrap(buffer, offset, length), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+
+    /** Top-level records of DBLP*/
+    private static final String[] RECORDS   = { "article", "inproceedings", "proceedings", "book", "incollection",
+                                                "phdthesis", "mastersthesis", "www", "person", "data" };
+    /** Charset of markup*/
+    private static final Charset  ASCII     = Charset.forName("US-ASCII");
+    /** Closing tag of the root element*/
+    private static final byte[]   FOOTER    = "</dblp>".getBytes(ASCII);
+    /** Minimal size of a chunk*/
+    private static final long     MIN_CHUNK = 1L << 20;
+    /** Maximal size of a chunk*/
+    private static final long     MAX_CHUNK = 1L << 26;
+
+    /** Source*/
+    private final File            source;
+    /** Number of threads*/
+    private final int             threads;
+    /** Parser engine*/
+    private final DBLPParser      parser;
+
+    /**
+     * Creates a new instance
+     * @param source
+     * @param threads
+     * @param parser
+     */
+    ParallelParser(File source, int threads, DBLPParser parser) {
+        this.source = source;
+        this.threads = threads;
+        this.parser = parser;
+    }
+
+    /**
+     * Parses the dump with the given handler
+     * @param handler
+     * @throws IOException
+     */
+    void parse(final DBLPHandler handler) throws IOException {
+
+        RandomAccessFile file = new RandomAccessFile(source, "r");
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            final FileChannel channel = file.getChannel();
+            final long[] boundaries = getBoundaries(channel);
+            final byte[] prolog = read(channel, 0, boundaries[0]);
+            final String systemId = source.toURI().toString();
+
+            // Parse chunks, keeping a bounded number of chunks in flight
+            LinkedList<ForkJoinTask<DBLPHandler>> tasks = new LinkedList<ForkJoinTask<DBLPHandler>>();
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                final long start = boundaries[i];
+                final long end = boundaries[i + 1];
+                tasks.add(pool.submit(new Callable<DBLPHandler>() {
+                    @Override
+                    public DBLPHandler call() throws Exception {
+                        DBLPHandler chunk = handler.split();
+                        parse(chunk, prolog, channel, start, end, systemId);
+                        return chunk;
+                    }
+                }));
+                if (tasks.size() >= threads * 2) {
+                    handler.merge(join(tasks.removeFirst()));
+                }
+            }
+            while (!tasks.isEmpty()) {
+                handler.merge(join(tasks.removeFirst()));
+            }
+        } finally {
+            pool.shutdownNow();
+            file.close();
+        }
+    }
+
+    /**
+     * Returns the offset of the first record that starts at or after the given offset, or the given
+     * end, if there is no such record
+     * @param channel
+     * @param offset
+     * @param end
+     * @return
+     * @throws IOException
+     */
+    private long find(FileChannel channel, long offset, long end) throws IOException {
+
+        byte[] buffer = new byte[1 << 16];
+        int overlap = 32;
+        while (offset < end) {
+            int length = (int) Math.min(buffer.length, end - offset);
+            int read = channel.read(ByteBuffer.wrap(buffer, 0, length), offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '<' && isRecord(buffer, i + 1, read)) {
+                    return offset + i;
+                }
+            }
+            if (read <= overlap) {
+                break;
+            }
+            offset += read - overlap;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the offsets at which chunks start. The first offset is the start of the first record,
+     * the last offset is the start of the closing tag of the root element.
+     * @param channel
+     * @return
+     * @throws IOException
+     */
+    private long[] getBoundaries(FileChannel channel) throws IOException {
+
+        // Find end of last record
+        long size = channel.size();
+        long end = -1;
+        byte[] tail = read(channel, Math.max(0, size - 1024), size);
+        for (int i = tail.length - FOOTER.length; i >= 0 && end == -1; i--) {
+            if (Arrays.equals(Arrays.copyOfRange(tail, i, i + FOOTER.length), FOOTER)) {
+                end = size - tail.length + i;
+            }
+        }
+        if (end == -1) {
+            throw new IOException("Error parsing DBLP: root element not closed");
+        }
+
+        // Split
+        long first = find(channel, 0, end);
+        long chunk = Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, (end - first) / (threads * 4)));
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(first);
+        long offset = first;
+        while (offset < end) {
+            offset = find(channel, Math.min(end, offset + chunk), end);
+            boundaries.add(offset);
+        }
+
+        // Convert
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the buffer contains the name of a top-level record at the given offset
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return
+     */
+    private boolean isRecord(byte[] buffer, int offset, int length) {
+        for (String record : RECORDS) {
+            int end = offset + record.length();
+            if (end < length && (buffer[end] == ' ' || buffer[end] == '>')) {
+                boolean match = true;
+                for (int i = 0; i < record.length() && match; i++) {
+                    match = buffer[offset + i] == record.charAt(i);
+                }
+                if (match) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Joins the given task
+     * @param task
+     * @return
+     * @throws IOException
+     */
+    private DBLPHandler join(ForkJoinTask<DBLPHandler> task) throws IOException {
+        try {
+            return task.get();
+        } catch (Exception e) {
+            throw new IOException("Error parsing DBLP", e);
+        }
+    }
+
+    /**
+     * Parses the given chunk
+     * @param handler
+     * @param prolog
+     * @param channel
+     * @param start
+     * @param end
+     * @param systemId
+     * @throws IOException
+     */
+    private void parse(DBLPHandler handler, byte[] prolog, FileChannel channel, long start, long end, String systemId) throws IOException {
+
+        InputStream input = new SequenceInputStream(new ByteArrayInputStream(prolog),
+                                                    new SequenceInputStream(new BufferedInputStream(new RangeInputStream(channel, start, end), 1 << 16),
+                                                                            new ByteArrayInputStream(FOOTER)));
+        parser.parse(input, systemId, handler);
+    }
+
+    /**
+     * Reads the given range
+     * @param channel
+     * @param start
+     * @param end
+     * @return
+     * @throws IOException
+     */
+    private byte[] read(FileChannel channel, long start, long end) throws IOException {
+        byte[] result = new byte[(int) (end - start)];
+        InputStream input = new RangeInputStream(channel, start, end);
+        int offset = 0;
+        while (offset < result.length) {
+            int read = input.read(result, offset, result.length - offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            offset += read;
+        }
+        return result;
+    }
+}
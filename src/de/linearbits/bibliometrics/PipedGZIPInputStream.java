@@ -0,0 +1,170 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a gzip-compressed file. Decompression is performed by a background thread, which
+ * feeds blocks of decompressed data through a bounded buffer, so that decompression and
+ * consumption of the data overlap.
+ *
+ * @author Fabian Prasser
+ */
+class PipedGZIPInputStream extends InputStream {
+
+    /** Size of a block*/
+    private static final int            BLOCK_SIZE = 1 << 16;
+    /** Number of blocks in the buffer*/
+    private static final int            BLOCKS     = 32;
+    /** Marks the end of the stream*/
+    private static final byte[]         EOF        = new byte[0];
+
+    /** Buffer*/
+    private final BlockingQueue<byte[]> queue      = new ArrayBlockingQueue<byte[]>(BLOCKS);
+    /** Thread*/
+    private final Thread                thread;
+    /** Error raised by the thread*/
+    private volatile IOException        error      = null;
+    /** Current block*/
+    private byte[]                      block      = null;
+    /** Length of the current block*/
+    private int                         length     = 0;
+    /** Offset in the current block*/
+    private int                         offset     = 0;
+    /** Whether the end has been reached*/
+    private boolean                     end        = false;
+
+    /**
+     * Creates a new instance
+     * @param file
+     * @throws IOException
+     */
+    PipedGZIPInputStream(File file) throws IOException {
+
+        final InputStream input = new GZIPInputStream(new FileInputStream(file), BLOCK_SIZE);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        byte[] buffer = new byte[BLOCK_SIZE];
+                        int read = fill(input, buffer);
+                        if (read > 0) {
+                            queue.put(read == buffer.length ? buffer : Arrays.copyOf(buffer, read));
+                        }
+                        if (read < buffer.length) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    error = e;
+                } catch (InterruptedException e) {
+                    // Closed by the consumer
+                    return;
+                } finally {
+                    try {
+                        input.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                }
+                try {
+                    queue.put(EOF);
+                } catch (InterruptedException e) {
+                    // Closed by the consumer
+                }
+            }
+        }, "Decompression of " + file.getName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Reads until the buffer is full or the end of the input has been reached
+     * @param input
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    private static int fill(InputStream input, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = input.read(buffer, offset, buffer.length - offset);
+            if (read < 0) {
+                break;
+            }
+            offset += read;
+        }
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        queue.clear();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!next()) {
+            return -1;
+        }
+        return block[offset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!next()) {
+            return -1;
+        }
+        int count = Math.min(len, length - offset);
+        System.arraycopy(block, offset, buffer, off, count);
+        offset += count;
+        return count;
+    }
+
+    /**
+     * Makes sure that the current block contains data. Returns false at the end of the stream.
+     * @return
+     * @throws IOException
+     */
+    private boolean next() throws IOException {
+        while (!end && (block == null || offset == length)) {
+            try {
+                block = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing", e);
+            }
+            offset = 0;
+            length = block.length;
+            if (block == EOF) {
+                end = true;
+            }
+        }
+        if (end && error != null) {
+            throw error;
+        }
+        return !end;
+    }
+}
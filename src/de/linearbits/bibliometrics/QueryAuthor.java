@@ -0,0 +1,78 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A query for the titles of all publications of a given author, grouped by year. Multiple
+ * queries can be answered in one pass over DBLP.
+ *
+ * @author Fabian Prasser
+ */
+class QueryAuthor {
+
+    /** Author*/
+    private final String                    author;
+    /** Result*/
+    private final Map<Integer, Set<String>> result = new TreeMap<Integer, Set<String>>();
+
+    /**
+     * Creates a new instance
+     * @param author
+     */
+    QueryAuthor(String author) {
+        this.author = author;
+    }
+
+    /**
+     * Adds a publication to the result. Publications without title or year are ignored.
+     * @param year
+     * @param title
+     */
+    void add(String year, String title) {
+        if (year == null || title == null) {
+            return;
+        }
+        int value;
+        try {
+            value = Integer.parseInt(year);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        Set<String> titles = result.get(value);
+        if (titles == null) {
+            titles = new HashSet<String>();
+            result.put(value, titles);
+        }
+        titles.add(title);
+    }
+
+    /**
+     * Returns the author
+     * @return
+     */
+    String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Returns the titles collected so far, by year in ascending order
+     * @return
+     */
+    Map<Integer, Set<String>> getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,111 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A query for the titles of all records of a given type that appeared in a given venue
+ * in a given year. Multiple queries can be answered in one pass over DBLP.
+ *
+ * @author Fabian Prasser
+ */
+class QueryDBLP {
+
+    /** Record type, e.g. article*/
+    private final String      type;
+    /** Venue field, e.g. journal*/
+    private final String      field;
+    /** Venue*/
+    private final String      value;
+    /** Year*/
+    private final String      year;
+    /** Result*/
+    private final Set<String> result = new HashSet<String>();
+
+    /**
+     * Creates a new instance
+     * @param type
+     * @param field
+     * @param value
+     * @param year
+     */
+    QueryDBLP(String type, String field, String value, int year) {
+        if (!RecordDBLP.isSingleValued(field)) {
+            throw new IllegalArgumentException("Unsupported field: " + field);
+        }
+        this.type = type;
+        this.field = field;
+        this.value = value;
+        this.year = String.valueOf(year);
+    }
+
+    /**
+     * Adds a title to the result
+     * @param title
+     */
+    void add(String title) {
+        if (title != null) {
+            result.add(title);
+        }
+    }
+
+    /**
+     * Returns the venue field
+     * @return
+     */
+    String getField() {
+        return field;
+    }
+
+    /**
+     * Returns the titles collected so far
+     * @return
+     */
+    Set<String> getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the record type
+     * @return
+     */
+    String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the venue
+     * @return
+     */
+    String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the year
+     * @return
+     */
+    String getYear() {
+        return year;
+    }
+
+    /**
+     * Returns whether the given record matches this query
+     * @param record
+     * @return
+     */
+    boolean matches(RecordDBLP record) {
+        return type.equals(record.getType()) && value.equals(record.getValue(field)) && year.equals(record.getYear());
+    }
+}
@@ -4,7 +4,7 @@
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
  * http://www.eclipse.org/legal/epl-v10.html
- * 
+ *
  * Contributors:
  * Fabian Prasser - initial API and implementation
  * ****************************************************************************
@@ -12,104 +12,864 @@
 package de.linearbits.bibliometrics;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
 
 /**
- * A simple file-based cache
- * 
+ * A simple file-based cache. Titles are stored in a shared dictionary. Citation counts are
+ * found by title and year in up to three layers: the changes made since the last compaction, the
+ * changes that are currently being compacted, and a snapshot that is memory-mapped read-only.<br>
+ * <br>
+ * On disk, the cache is located in a folder, which is <code>data</code> by default. It consists of a binary
+ * snapshot (<code>cache.bin</code>, see {@link CacheSnapshot}) and an append-only log of changes
+ * (<code>cache.log</code>). The log contains one record per line.
+ * A record of the form <code>title;year;count</code> stores a count, a record that only consists of a
+ * title removes all counts for the title. Persisting appends the changes made since the last call to the
+ * log. When the log has grown large, it is rotated to <code>cache.log.1</code> and a new snapshot is
+ * merged by a background thread, after which the rotated log is deleted. When loading, the snapshot is
+ * mapped and both logs are replayed in this order, which is correct at every stage of a compaction, and a
+ * partially written last record is truncated. If there is no binary snapshot, it is converted from the
+ * records in <code>cache.csv</code>. Replacing a mapped snapshot relies on POSIX rename semantics.<br>
+ * <br>
+ * When changes are written to the log is controlled by a {@link Durability}. By default, they are written by a
+ * background thread in batches. Pending changes are always written when the cache is closed, or when the JVM
+ * shuts down.<br>
+ * <br>
+ * The cache is thread-safe. The layers are published as one immutable object. Changes are split into stripes
+ * by title, each of which is guarded by its own lock, so that all entries of a title are in the same stripe.
+ * To freeze the changes for a compaction, a new set of layers is published, after which the lock of each old
+ * stripe is acquired once, to wait for writers that are still using it. Lookups never wait for a compaction.<br>
+ * <br>
+ * Recently used entries of the snapshot are kept in a bounded in-memory tier (see {@link CacheHot}), which
+ * is striped in the same way. When a new snapshot is used, entries that have been changed are dropped from this
+ * tier. The changes themselves are bounded by compacting when their number exceeds the capacity of the tier.
+ *
  * @author Fabian Prasser
  */
 class ReaderCache {
 
-    /** Map*/
-    private final Map<String, Map<Integer, Integer>> map = new LinkedHashMap<String, Map<Integer, Integer>>();
-    
     /**
-     * Creates a new instance
+     * The layers of the cache
+     * @author Fabian Prasser
+     */
+    private static class Layers {
+
+        /** Changes since the last compaction*/
+        private final CacheDelta[]  current;
+        /** Changes that are being compacted, if any*/
+        private final CacheDelta[]  previous;
+        /** Recently used entries of the snapshot*/
+        private final CacheHot[]    hot;
+        /** Mapped snapshot*/
+        private final CacheSnapshot mapped;
+
+        /**
+         * Creates a new instance
+         * @param current
+         * @param previous
+         * @param hot
+         * @param mapped
+         */
+        private Layers(CacheDelta[] current, CacheDelta[] previous, CacheHot[] hot, CacheSnapshot mapped) {
+            this.current = current;
+            this.previous = previous;
+            this.hot = hot;
+            this.mapped = mapped;
+        }
+    }
+
+    /** Charset*/
+    private static final Charset        UTF8       = Charset.forName("UTF-8");
+    /** Minimal number of records in the log before it is compacted*/
+    private static final int            COMPACTION = 1 << 14;
+    /** Default number of pending records after which they are written in the background*/
+    private static final int            BATCH      = 1 << 10;
+    /** Default interval in milliseconds after which pending records are written in the background*/
+    private static final long           INTERVAL   = 1000;
+    /** Logarithm of the number of stripes*/
+    private static final int            STRIPES    = 5;
+    /** Default number of entries in memory*/
+    private static final int            CAPACITY   = 1 << 16;
+
+    /**
+     * Returns a new in-memory tier of the given capacity. If given, entries are copied from the old tier,
+     * unless they have been changed, and counters are inherited.
+     * @param capacity
+     * @param old
+     * @param changes
+     * @return
+     */
+    private static CacheHot[] getHot(int capacity, CacheHot[] old, CacheDelta[] changes) {
+        CacheHot[] hot = new CacheHot[1 << STRIPES];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = new CacheHot(capacity >> STRIPES);
+            if (old != null) {
+                synchronized (old[i]) {
+                    hot[i].inherit(old[i]);
+                    if (changes != null) {
+                        synchronized (changes[i]) {
+                            for (int entry = 0; entry < old[i].size(); entry++) {
+                                int title = old[i].getTitle(entry);
+                                int year = old[i].getYear(entry);
+                                if (changes[i].get(title, year) == CacheDelta.MISSING) {
+                                    hot[i].put(title, year, old[i].getCount(entry));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return hot;
+    }
+
+    /**
+     * Returns a new set of empty stripes
+     * @return
+     */
+    private static CacheDelta[] getStripes() {
+        CacheDelta[] stripes = new CacheDelta[1 << STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new CacheDelta();
+        }
+        return stripes;
+    }
+
+    /**
+     * Truncates a partially written last record of the given log
+     * @param file
      * @throws IOException
      */
-    ReaderCache() throws IOException {
-        String line = null;
+    static void truncate(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(new File("data/cache.csv")));
-            line = reader.readLine();
-            while (line != null) {
-                String[] parts = line.split(";");
-                String title = parts[0];
-                int year = Integer.valueOf(parts[1]);
-                int count = Integer.valueOf(parts[2]);
-                put(title, year, count);
-                line = reader.readLine();
+            byte[] buffer = new byte[1 << 13];
+            long end = raf.length();
+            while (end > 0) {
+                int length = (int) Math.min(buffer.length, end);
+                raf.seek(end - length);
+                raf.readFully(buffer, 0, length);
+                for (int i = length - 1; i >= 0; i--) {
+                    if (buffer[i] == '\n') {
+                        raf.setLength(end - length + i + 1);
+                        return;
+                    }
+                }
+                end -= length;
             }
-            reader.close();
-        } catch (Exception e) {
-            System.out.println(line);
-            throw new IOException(e);
+            raf.setLength(0);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Dictionary of titles*/
+    private final Dictionary            strings;
+    /** Records to convert, if there is no snapshot*/
+    private final File                  records;
+    /** Snapshot*/
+    private final File                  snapshot;
+    /** Log*/
+    private final File                  log;
+    /** Log that is being compacted*/
+    private final File                  rotated;
+    /** Layers*/
+    private volatile Layers             layers;
+    /** Snapshot that has been written by the last compaction, but is not used yet*/
+    private volatile CacheSnapshot      compacted  = null;
+    /** Guards compactions and changes to the layers*/
+    private final Object                compaction = new Object();
+    /** Background compaction, if any*/
+    private Thread                      compactor  = null;
+    /** Error raised in the background*/
+    private volatile IOException        error      = null;
+    /** Number of entries in memory*/
+    private int                         capacity   = CAPACITY;
+    /** Guards the log*/
+    private final Object                files      = new Object();
+    /** Stream for appending to the log, opened lazily*/
+    private FileOutputStream            output     = null;
+    /** Records that have not been written to the log yet*/
+    private final ByteArrayOutputStream pending    = new ByteArrayOutputStream();
+    /** Number of pending records*/
+    private int                         buffered   = 0;
+    /** Number of records in the log, including pending records*/
+    private int                         logged     = 0;
+    /** When changes are written*/
+    private Durability                  durability = Durability.BATCHED;
+    /** Number of pending records after which they are written in the background*/
+    private int                         batch      = BATCH;
+    /** Interval in milliseconds after which pending records are written in the background*/
+    private long                        interval   = INTERVAL;
+    /** Background writer, if any*/
+    private Thread                      writer     = null;
+    /** Writes pending records when the JVM shuts down*/
+    private final Thread                hook;
+    /** Whether the cache has been closed*/
+    private boolean                     closed     = false;
+    /** Statistics*/
+    private final Metrics               metrics;
+
+    /**
+     * Creates a new instance, whose files are located in the given folder, which is created if needed
+     * @param folder
+     * @param strings
+     * @param metrics
+     * @throws IOException
+     */
+    ReaderCache(File folder, Dictionary strings, Metrics metrics) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Cannot create: " + folder);
+        }
+        this.strings = strings;
+        this.metrics = metrics;
+        this.records = new File(folder, "cache.csv");
+        this.snapshot = new File(folder, "cache.bin");
+        this.log = new File(folder, "cache.log");
+        this.rotated = new File(folder, "cache.log.1");
+        boolean convert = !snapshot.exists();
+        this.layers = new Layers(getStripes(), null, getHot(capacity, null, null), CacheSnapshot.open(snapshot));
+        if (convert) {
+            load(records);
+        }
+        logged += load(rotated);
+        truncate(log);
+        logged += load(log);
+
+        // Convert, or finish an interrupted compaction
+        if (convert || rotated.exists()) {
+            CacheSnapshot.write(snapshot, layers.mapped, layers.current, strings);
+            layers = new Layers(getStripes(), null, layers.hot, CacheSnapshot.open(snapshot));
+            delete(rotated);
+            delete(log);
+            logged = 0;
+        }
+
+        // Start writing in the background
+        this.hook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    close();
+                } catch (IOException e) {
+                    // Nothing we can do during shutdown
+                }
+            }
+        }, "Shutdown of " + log.getName());
+        Runtime.getRuntime().addShutdownHook(hook);
+        setDurability(durability, batch, interval);
+    }
+
+    /**
+     * Writes all pending changes, waits for a running compaction and releases all resources. The
+     * cache must not be used afterwards.
+     * @throws IOException
+     */
+    void close() throws IOException {
+
+        // Stop the writer
+        Thread writer;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writer = this.writer;
+            this.writer = null;
+            notifyAll();
         }
+        Thread compactor;
+        synchronized (compaction) {
+            compactor = this.compactor;
+        }
+        try {
+            if (writer != null) {
+                writer.join();
+            }
+            if (compactor != null) {
+                compactor.join();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while closing cache");
+        }
+
+        // Write and close
+        write(getDurability() == Durability.SYNC);
+        synchronized (files) {
+            if (output != null) {
+                output.close();
+                output = null;
+            }
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // We are part of the shutdown
+        }
+        report();
     }
-    
+
     /**
      * Check entry
      * @param title
      * @param year
      * @return
      */
-    boolean contains(String title, int year) {
-        title = title.replace(";", "");
-        return map.containsKey(title) && map.get(title).containsKey(year);
+    boolean contains(int title, int year) {
+        return lookup(title, year) >= 0;
     }
-    
+
     /**
      * Get entry
      * @param title
      * @param year
      * @return
      */
-    int get(String title, int year) {
-        title = title.replace(";", "");
-        return map.get(title).get(year);
+    int get(int title, int year) {
+        int count = lookup(title, year);
+        if (count < 0) {
+            throw new IllegalArgumentException("No entry for: " + strings.decode(title) + " in " + year);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the identifier of the given title, as used by this cache
+     * @param article
+     * @return
+     */
+    int getTitle(Element article) {
+        String title = article.getValue();
+        return title.indexOf(';') == -1 ? article.getId(strings) : getTitle(title);
+    }
+
+    /**
+     * Returns the count for the given title and year, or a negative value if there is none. Unlike
+     * {@link #contains(int, int)} followed by {@link #get(int, int)}, this is atomic.
+     * @param title
+     * @param year
+     * @return
+     */
+    int lookup(int title, int year) {
+        Layers layers = this.layers;
+        int stripe = getStripe(title);
+        int count;
+        CacheDelta delta = layers.current[stripe];
+        synchronized (delta) {
+            count = delta.get(title, year);
+        }
+        if (count == CacheDelta.MISSING && layers.previous != null) {
+            delta = layers.previous[stripe];
+            synchronized (delta) {
+                count = delta.get(title, year);
+            }
+        }
+        if (count != CacheDelta.MISSING) {
+            return count;
+        }
+
+        // Read from memory, or from disk
+        CacheHot hot = layers.hot[stripe];
+        synchronized (hot) {
+            count = hot.get(title, year);
+        }
+        if (count == CacheHot.UNKNOWN) {
+            count = layers.mapped.get(strings.fingerprint(title), year);
+            synchronized (hot) {
+                hot.put(title, year, count);
+            }
+        }
+        return count;
     }
-    
+
     /**
-     * Store to disk
+     * Returns statistics about the in-memory tier
+     * @return
+     */
+    CacheStatistics getStatistics() {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        int size = 0;
+        int capacity;
+        Layers layers;
+        synchronized (compaction) {
+            layers = this.layers;
+            capacity = this.capacity;
+        }
+        for (CacheHot hot : layers.hot) {
+            synchronized (hot) {
+                hits += hot.getHits();
+                misses += hot.getMisses();
+                evictions += hot.getEvictions();
+                size += hot.size();
+            }
+        }
+        return new CacheStatistics(hits, misses, evictions, size, capacity);
+    }
+
+    /**
+     * Removes all entries for the given title
+     * @param title
+     */
+    void remove(String title) {
+        String value = title.replace(";", "");
+        int id = strings.lookup(value);
+        if (id == -1) {
+
+            // Titles that are only contained in the snapshot have not been interned
+            if (layers.mapped.years(strings.fingerprint(value)).size() == 0) {
+                return;
+            }
+            id = strings.encode(value);
+        }
+        remove(id, strings.decode(id) + "\n");
+    }
+
+    /**
+     * Appends all changes since the last call to the log. The log is compacted in the background
+     * when it has grown large compared to the snapshot.
      * @throws IOException
      */
     void persist() throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(new File("data/cache.csv")));
-        for (String key : map.keySet()) {
-            for (Entry<Integer, Integer> entry : map.get(key).entrySet()) {
-                writer.write(key);
-                writer.write(";");
-                writer.write(String.valueOf(entry.getKey()));
-                writer.write(";");
-                writer.write(String.valueOf(entry.getValue()));
-                writer.write("\n");
+        long start = metrics.start();
+        try {
+            // Report errors from the background
+            report();
+
+            // Write, unless this is done in the background or on close
+            if (getDurability() == Durability.SYNC) {
+                write(true);
+            }
+
+            // Compact
+            synchronized (compaction) {
+
+                // Use the result of the last compaction
+                CacheSnapshot compacted = this.compacted;
+                if (compacted != null) {
+                    this.compacted = null;
+                    this.layers = new Layers(layers.current, null, getHot(capacity, layers.hot, layers.previous), compacted);
+                }
+
+                // Start a new compaction
+                int logged;
+                synchronized (this) {
+                    logged = this.logged;
+                }
+                if (logged >= Math.max(COMPACTION, Math.min(layers.mapped.size() >> 3, capacity)) && (compactor == null || !compactor.isAlive())) {
+                    compact();
+                }
             }
+        } finally {
+            metrics.stop(Stage.CACHE_PERSIST, start);
         }
-        writer.close();
     }
-    
+
     /**
      * Put entry
      * @param title
      * @param year
      * @param count
      */
-    void put(String title, int year, int count) {
-        title = title.replace(";", "");
-        Map<Integer, Integer> entry = map.get(title);
-        if (entry == null) {
-            entry = new HashMap<Integer, Integer>();
-            map.put(title, entry);
+    void put(int title, int year, int count) {
+        set(title, year, new int[] { count }, strings.decode(title));
+    }
+
+    /**
+     * Put entries for consecutive years at once
+     * @param title
+     * @param from First year
+     * @param counts Count for each year
+     */
+    void put(int title, int from, int[] counts) {
+        set(title, from, counts, strings.decode(title));
+    }
+
+    /**
+     * Sets the number of entries of the snapshot that are kept in memory. The content of the
+     * in-memory tier is dropped, but its counters are kept.
+     * @param capacity
+     */
+    void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        synchronized (compaction) {
+            this.capacity = capacity;
+            Layers layers = this.layers;
+            this.layers = new Layers(layers.current, layers.previous, getHot(capacity, layers.hot, null), layers.mapped);
+        }
+    }
+
+    /**
+     * Sets when changes are written to disk
+     * @param durability
+     * @throws IOException
+     */
+    void setDurability(Durability durability) throws IOException {
+        int batch;
+        long interval;
+        synchronized (this) {
+            batch = this.batch;
+            interval = this.interval;
+        }
+        setDurability(durability, batch, interval);
+    }
+
+    /**
+     * Sets when changes are written to disk. In batched mode, pending changes are written by a background
+     * thread when the given number of changes has accumulated or after the given interval.
+     * @param durability
+     * @param batch
+     * @param interval in milliseconds
+     * @throws IOException
+     */
+    void setDurability(Durability durability, int batch, long interval) throws IOException {
+
+        if (batch <= 0 || interval <= 0) {
+            throw new IllegalArgumentException("Batch size and interval must be positive");
+        }
+
+        // Stop the current writer
+        Thread writer;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Cache has been closed");
+            }
+            writer = this.writer;
+            this.writer = null;
+            notifyAll();
+        }
+        try {
+            if (writer != null) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while stopping writer");
+        }
+
+        // Write pending changes and start a new writer
+        write(durability == Durability.SYNC);
+        synchronized (this) {
+            this.durability = durability;
+            this.batch = batch;
+            this.interval = interval;
+            if (durability == Durability.BATCHED) {
+                this.writer = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        writeBehind();
+                    }
+                }, "Write-behind of " + log.getName());
+                this.writer.setDaemon(true);
+                this.writer.start();
+            }
+        }
+    }
+
+    /**
+     * Adds a record for each of the given entries to the pending records
+     * @param value
+     * @param from
+     * @param counts
+     */
+    private synchronized void append(String value, int from, int[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            append(value + ";" + (from + i) + ";" + counts[i] + "\n");
+        }
+    }
+
+    /**
+     * Adds a record to the pending records and wakes up the writer if a batch is complete
+     * @param record
+     */
+    private synchronized void append(String record) {
+        byte[] bytes = record.getBytes(UTF8);
+        pending.write(bytes, 0, bytes.length);
+        logged++;
+        if (++buffered >= batch && writer != null) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Rotates the log and freezes the changes, unless this has been done by a compaction that failed,
+     * and merges the frozen changes into a new snapshot in the background. Must be called while holding
+     * the lock for compactions.
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+
+        Layers layers = this.layers;
+        if (layers.previous == null) {
+
+            // Rotate. Pending records are written to the new log.
+            synchronized (files) {
+                if (output != null) {
+                    output.close();
+                    output = null;
+                }
+                if (log.exists() && !log.renameTo(rotated)) {
+                    throw new IOException("Cannot rotate log: " + log);
+                }
+                synchronized (this) {
+                    logged = buffered;
+                }
+            }
+
+            // Freeze, and wait for writers that still use the frozen stripes
+            Layers frozen = new Layers(getStripes(), layers.current, layers.hot, layers.mapped);
+            this.layers = frozen;
+            for (CacheDelta stripe : layers.current) {
+                synchronized (stripe) {
+                    // Wait
+                }
+            }
+            layers = frozen;
+        }
+
+        // Write snapshot in the background
+        final CacheSnapshot base = layers.mapped;
+        final CacheDelta[] deltas = layers.previous;
+        compactor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    CacheSnapshot.write(snapshot, base, deltas, strings);
+                    compacted = CacheSnapshot.open(snapshot);
+                    delete(rotated);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }, "Compaction of " + snapshot.getName());
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    /**
+     * Deletes the given file, if it exists
+     * @param file
+     * @throws IOException
+     */
+    private void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete: " + file);
+        }
+    }
+
+    /**
+     * Returns when changes are written
+     * @return
+     */
+    private synchronized Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Returns the stripe of the given title
+     * @param title
+     * @return
+     */
+    private int getStripe(int title) {
+        return (title * 0x9E3779B9) >>> (32 - STRIPES);
+    }
+
+    /**
+     * Returns the identifier of the given title, as used by this cache
+     * @param title
+     * @return
+     */
+    private int getTitle(String title) {
+        return strings.encode(title.replace(";", ""));
+    }
+
+    /**
+     * Replays the records in the given file, if it exists. Returns the number of records.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private int load(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        int records = 0;
+        String line = null;
+        int[] count = new int[1];
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            line = reader.readLine();
+            while (line != null) {
+                String[] parts = line.split(";");
+                if (parts.length == 1) {
+                    remove(getTitle(parts[0]), null);
+                } else {
+                    String title = parts[0];
+                    int year = Integer.valueOf(parts[1]);
+                    count[0] = Integer.valueOf(parts[2]);
+                    set(getTitle(title), year, count, null);
+                }
+                records++;
+                line = reader.readLine();
+            }
+        } catch (Exception e) {
+            throw new IOException("Error reading cache: " + file + ", line: " + line, e);
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    /**
+     * Removes all entries for the given title, by hiding entries in lower layers with tombstones,
+     * and appends the given record, if any. While changes are being compacted, the lock of the
+     * frozen stripe is held as well, so that the log has the same order as the layers.
+     * @param title
+     * @param record
+     */
+    private void remove(int title, String record) {
+        int stripe = getStripe(title);
+        long fingerprint = strings.fingerprint(title);
+        while (true) {
+            Layers layers = this.layers;
+            CacheDelta delta = layers.current[stripe];
+            synchronized (delta) {
+                if (this.layers.current != layers.current) {
+                    continue;
+                }
+                delta.remove(title);
+                IntList years = layers.mapped.years(fingerprint);
+                for (int i = 0; i < years.size(); i++) {
+                    delta.set(title, years.get(i), CacheDelta.TOMBSTONE);
+                }
+                if (layers.previous == null) {
+                    if (record != null) {
+                        append(record);
+                    }
+                    return;
+                }
+                synchronized (layers.previous[stripe]) {
+                    years = layers.previous[stripe].years(title);
+                    for (int i = 0; i < years.size(); i++) {
+                        delta.set(title, years.get(i), CacheDelta.TOMBSTONE);
+                    }
+                    if (record != null) {
+                        append(record);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Rethrows an error raised in the background
+     * @throws IOException
+     */
+    private void report() throws IOException {
+        IOException error = this.error;
+        if (error != null) {
+            this.error = null;
+            throw error;
+        }
+    }
+
+    /**
+     * Sets entries for consecutive years and, if the value of the title is given, appends a record for
+     * each. All entries are set while holding the lock of the stripe once. While changes are being compacted,
+     * the lock of the frozen stripe is held as well, so that the log has the same order as the layers.
+     * @param title
+     * @param from First year
+     * @param counts Count for each year
+     * @param value Value of the title, or null
+     */
+    private void set(int title, int from, int[] counts, String value) {
+        int stripe = getStripe(title);
+        while (true) {
+            Layers layers = this.layers;
+            CacheDelta delta = layers.current[stripe];
+            synchronized (delta) {
+                if (this.layers.current != layers.current) {
+                    continue;
+                }
+                for (int i = 0; i < counts.length; i++) {
+                    delta.set(title, from + i, counts[i]);
+                }
+                if (value == null) {
+                    return;
+                }
+                if (layers.previous == null) {
+                    append(value, from, counts);
+                    return;
+                }
+                synchronized (layers.previous[stripe]) {
+                    append(value, from, counts);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Appends all pending records to the log. Records are taken from the buffer while holding the
+     * lock for the log, so that batches are written in order, and the buffer is not locked during I/O.
+     * @param sync Whether to sync the log to disk
+     * @throws IOException
+     */
+    private void write(boolean sync) throws IOException {
+        synchronized (files) {
+            byte[] bytes;
+            synchronized (this) {
+                if (buffered == 0) {
+                    return;
+                }
+                bytes = pending.toByteArray();
+                pending.reset();
+                buffered = 0;
+            }
+            if (output == null) {
+                output = new FileOutputStream(log, true);
+            }
+            output.write(bytes);
+            output.flush();
+            if (sync) {
+                output.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * Writes pending records in batches, until the writer is replaced or the cache is closed
+     */
+    private void writeBehind() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (writer != Thread.currentThread()) {
+                        return;
+                    }
+                    if (buffered < batch) {
+                        wait(interval);
+                    }
+                }
+                write(false);
+            }
+        } catch (InterruptedException e) {
+            // Stop
+        } catch (IOException e) {
+            error = e;
         }
-        entry.put(year, count);
     }
 }
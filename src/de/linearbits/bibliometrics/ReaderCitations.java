@@ -0,0 +1,695 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads citation counts from the cache or, if they are not cached, from a {@link CitationSource}, which
+ * is Google Scholar, unless another source has been set. Responses of Google Scholar can be recorded to an
+ * archive and replayed from it, see {@link HTTPClient}. Counts that
+ * are not cached are fetched concurrently by a pool of threads. All requests to Google Scholar pass
+ * a {@link Throttle}, which bounds the number of requests in flight and the rate at which they are
+ * started, regardless of the thread that issues them. Concurrent fetches of the same title and year
+ * are coalesced: the first caller fetches the count, all others wait for its result. The cluster id of
+ * a title is searched only once and kept in a {@link CacheIds}, so that counts for further years only need
+ * one request. Concurrent searches for the same title are coalesced as well.<br>
+ * <br>
+ * When counts for a span of years are needed, they are fetched as a histogram: the count for the whole
+ * span is requested and the span is bisected recursively, where the count of the right half is derived
+ * from the counts of the span and of the left half, and spans without citations are not bisected further.
+ * This never needs more requests than fetching each year, and far fewer for years without citations.
+ * All counts of a histogram are stored in the cache at once.
+ *
+ * @author Fabian Prasser
+ */
+class ReaderCitations {
+
+    /** Cache*/
+    private final ReaderCache                                cache;
+    /** Cache of ids*/
+    private final CacheIds                                   ids;
+    /** Throttle for all requests*/
+    private final Throttle                                   throttle;
+    /** Reader for Google Scholar*/
+    private final ReaderGoogleScholar                        scholar;
+    /** Source of citations*/
+    private volatile CitationSource                          source;
+    /** Fetches in flight, by title and year*/
+    private final ConcurrentMap<Long, FutureTask<Integer>>   flights   = new ConcurrentHashMap<Long, FutureTask<Integer>>();
+    /** Histograms in flight, by title and span of years*/
+    private final ConcurrentMap<Long, FutureTask<int[]>>     spans     = new ConcurrentHashMap<Long, FutureTask<int[]>>();
+    /** Searches for ids in flight, by title*/
+    private final ConcurrentMap<Integer, FutureTask<String>> searches  = new ConcurrentHashMap<Integer, FutureTask<String>>();
+    /** Statistics*/
+    private final Metrics                                    metrics;
+    /** Number of fetches and searches that joined one in flight*/
+    private final AtomicLong                                 coalesced = new AtomicLong();
+    /** Number of threads*/
+    private int                                              threads   = 1;
+    /** Pool of threads, created lazily and resized in place*/
+    private ThreadPoolExecutor                               executor  = null;
+
+    /**
+     * Creates a new instance
+     * @param cache
+     * @param ids
+     * @param host
+     * @param metrics
+     */
+    ReaderCitations(ReaderCache cache, CacheIds ids, String host, Metrics metrics) {
+        this.cache = cache;
+        this.ids = ids;
+        this.metrics = metrics;
+        this.throttle = new Throttle(threads, 0d);
+        this.scholar = new ReaderGoogleScholar(host, throttle, metrics);
+        this.source = scholar;
+    }
+
+    /**
+     * Stops the pool of threads. Running requests are completed.
+     */
+    synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Returns the citation count of the given article in the given year
+     * @param article
+     * @param year
+     * @return
+     * @throws IOException
+     */
+    int get(ElementArticle article, int year) throws IOException {
+        int title = cache.getTitle(article);
+        int count = lookup(title, year);
+        return count >= 0 ? count : fetch(article, title, year);
+    }
+
+    /**
+     * Returns the citation counts of the given article in the given span of years
+     * @param article
+     * @param from First year
+     * @param to Last year
+     * @return Count for each year
+     * @throws IOException
+     */
+    int[] get(ElementArticle article, int from, int to) throws IOException {
+        int title = cache.getTitle(article);
+        int[] counts = new int[to - from + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = lookup(title, from + i);
+            if (counts[i] < 0) {
+                return fetch(article, title, from, to);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the citation counts of the given articles in the given years. Counts that are not cached
+     * are fetched concurrently. If most years of a span are missing for a title, they are fetched as a
+     * histogram.
+     * @param articles
+     * @param years Year for each article
+     * @return Count for each article
+     * @throws IOException
+     */
+    int[] get(final List<ElementArticle> articles, final int[] years) throws IOException {
+
+        // Read from cache
+        final int[] titles = new int[articles.size()];
+        int[] result = new int[articles.size()];
+        IntList missing = new IntList();
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = cache.getTitle(articles.get(i));
+            result[i] = lookup(titles[i], years[i]);
+            if (result[i] < 0) {
+                missing.add(i);
+            }
+        }
+
+        // Group by title
+        Map<Integer, IntList> groups = new LinkedHashMap<Integer, IntList>();
+        for (int i = 0; i < missing.size(); i++) {
+            int index = missing.get(i);
+            IntList group = groups.get(titles[index]);
+            if (group == null) {
+                group = new IntList();
+                groups.put(titles[index], group);
+            }
+            group.add(index);
+        }
+
+        // Prepare a fetch of each year, or of a span of years
+        List<IntList> members = new ArrayList<IntList>();
+        final IntList froms = new IntList();
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+        for (IntList group : groups.values()) {
+            int from = Integer.MAX_VALUE;
+            int to = Integer.MIN_VALUE;
+            for (int i = 0; i < group.size(); i++) {
+                from = Math.min(from, years[group.get(i)]);
+                to = Math.max(to, years[group.get(i)]);
+            }
+            if (group.size() * 2 > to - from + 1) {
+                members.add(group);
+                froms.add(from);
+                tasks.add(getTask(articles.get(group.get(0)), titles[group.get(0)], from, to));
+            } else {
+                for (int i = 0; i < group.size(); i++) {
+                    int index = group.get(i);
+                    IntList member = new IntList();
+                    member.add(index);
+                    members.add(member);
+                    froms.add(years[index]);
+                    tasks.add(getTask(articles.get(index), titles[index], years[index], years[index]));
+                }
+            }
+        }
+
+        // Fetch sequentially
+        ExecutorService executor = getExecutor();
+        if (executor == null || tasks.size() <= 1) {
+            for (int i = 0; i < tasks.size(); i++) {
+                int[] counts;
+                try {
+                    counts = tasks.get(i).call();
+                } catch (IOException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+                collect(members.get(i), froms.get(i), counts, years, result);
+            }
+            return result;
+        }
+
+        // Fetch concurrently
+        List<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+        for (Callable<int[]> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                collect(members.get(i), froms.get(i), await(futures.get(i)), years, result);
+            }
+        } catch (IOException e) {
+            cancel(futures);
+            throw e;
+        } catch (RuntimeException e) {
+            cancel(futures);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of fetches and searches that have been saved, because they joined one for
+     * the same title and year, or title, in flight
+     * @return
+     */
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Records all responses of Google Scholar to the given archive, or stops recording or replaying,
+     * if the archive is null. Google Scholar is used as source.
+     * @param archive
+     * @throws IOException
+     */
+    void setRecording(File archive) throws IOException {
+        scholar.getClient().setRecording(archive == null ? null : new ResponseArchive(archive));
+        source = scholar;
+    }
+
+    /**
+     * Replays all responses of Google Scholar from the given archive after the given latency, or stops
+     * recording or replaying, if the archive is null. Google Scholar is used as source.
+     * @param archive
+     * @param latency In milliseconds
+     * @throws IOException
+     */
+    void setReplay(File archive, long latency) throws IOException {
+        scholar.getClient().setReplay(archive == null ? null : new ResponseArchive(archive), latency);
+        source = scholar;
+    }
+
+    /**
+     * Sets the source of citations, or Google Scholar if the source is null
+     * @param source
+     */
+    void setSource(CitationSource source) {
+        this.source = source == null ? scholar : source;
+    }
+
+    /**
+     * Sets the maximal number of requests per second, or zero for no limit
+     * @param rate
+     */
+    void setRate(double rate) {
+        throttle.setRate(rate);
+    }
+
+    /**
+     * Sets the number of retries of failed requests and the delay before the first retry
+     * @param retries
+     * @param backoff In milliseconds
+     */
+    void setRetries(int retries, long backoff) {
+        scholar.getClient().setRetries(retries, backoff);
+    }
+
+    /**
+     * Sets the timeouts for requests
+     * @param connect In milliseconds
+     * @param read In milliseconds
+     */
+    void setTimeouts(int connect, int read) {
+        scholar.getClient().setTimeouts(connect, read);
+    }
+
+    /**
+     * Sets the number of threads, which is also the maximal number of requests in flight. The pool is
+     * resized in place, so that fetches which are submitted concurrently are never rejected.
+     * @param threads
+     */
+    synchronized void setThreads(int threads) {
+        throttle.setMaximum(threads);
+        this.threads = threads;
+        if (executor != null && threads > 1) {
+            if (threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(threads);
+                executor.setCorePoolSize(threads);
+            } else {
+                executor.setCorePoolSize(threads);
+                executor.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    /**
+     * Waits for the given fetch and rethrows its exception, if any
+     * @param future
+     * @return
+     * @throws IOException
+     */
+    private <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new IOException(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while fetching citations");
+        }
+    }
+
+    /**
+     * Copies the counts of the given entries from the given histogram into the result
+     * @param entries
+     * @param from First year of the histogram
+     * @param counts
+     * @param years Year of each entry
+     * @param result
+     */
+    private void collect(IntList entries, int from, int[] counts, int[] years, int[] result) {
+        for (int i = 0; i < entries.size(); i++) {
+            int index = entries.get(i);
+            result[index] = counts[years[index] - from];
+        }
+    }
+
+    /**
+     * Bisects the given span of the histogram, whose total count is known. Counts of the histogram that
+     * are not negative are cached. They are never overwritten and are used instead of requests, if a span
+     * is covered completely.
+     * @param id
+     * @param from First year of the histogram
+     * @param counts
+     * @param low First index of the span
+     * @param high Last index of the span
+     * @param total
+     * @throws IOException
+     */
+    private void bisect(String id, int from, int[] counts, int low, int high, int total) throws IOException {
+
+        // Done
+        if (isCached(counts, low, high)) {
+            return;
+        } else if (total == 0) {
+            for (int i = low; i <= high; i++) {
+                counts[i] = Math.max(counts[i], 0);
+            }
+            return;
+        } else if (low == high) {
+            counts[low] = total;
+            return;
+        }
+
+        // Split. Large counts are approximated by Google Scholar, in which case the left half may reach
+        // the total and the right half cannot be derived from them.
+        int middle = (low + high) >>> 1;
+        int left = getCount(id, from, counts, low, middle);
+        int right = left < total ? total - left : getCount(id, from, counts, middle + 1, high);
+        bisect(id, from, counts, low, middle, left);
+        bisect(id, from, counts, middle + 1, high, right);
+    }
+
+    /**
+     * Cancels the given fetches, unless they are running. Running fetches are completed, because
+     * other callers may have joined them.
+     * @param futures
+     */
+    private void cancel(List<Future<int[]>> futures) {
+        for (Future<int[]> future : futures) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Fetches the citation count of the given article in the given year and stores it in the cache.
+     * If the same count is already being fetched, joins this fetch instead.
+     * @param article
+     * @param title
+     * @param year
+     * @return
+     * @throws IOException
+     */
+    private int fetch(final ElementArticle article, final int title, final int year) throws IOException {
+        return join(flights, ((long) title << 32) | (year & 0xFFFFFFFFL), new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                // Another fetch may have completed since we looked up the cache
+                int count = cache.lookup(title, year);
+                return count >= 0 ? count : request(article, title, year);
+            }
+        });
+    }
+
+    /**
+     * Returns the count of the given span of the histogram, from the cached counts if they cover it
+     * completely, or from Google Scholar
+     * @param id
+     * @param from First year of the histogram
+     * @param counts
+     * @param low First index of the span
+     * @param high Last index of the span
+     * @return
+     * @throws IOException
+     */
+    private int getCount(String id, int from, int[] counts, int low, int high) throws IOException {
+        int total = 0;
+        for (int i = low; i <= high; i++) {
+            if (counts[i] < 0) {
+                return getCount(id, from + low, from + high);
+            }
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the citation count of the given id in the given span of years from Google Scholar
+     * @param id
+     * @param from
+     * @param to
+     * @return
+     * @throws IOException
+     */
+    private int getCount(String id, int from, int to) throws IOException {
+        long start = metrics.start();
+        try {
+            return source.getCitationCount(id, from, to);
+        } finally {
+            metrics.stop(Stage.CITATION_COUNT, start);
+        }
+    }
+
+    /**
+     * Fetches the citation counts of the given article in the given span of years and stores them in the
+     * cache. If the same span is already being fetched, joins this fetch instead.
+     * @param article
+     * @param title
+     * @param from First year
+     * @param to Last year
+     * @return Count for each year
+     * @throws IOException
+     */
+    private int[] fetch(final ElementArticle article, final int title, final int from, final int to) throws IOException {
+        if (from == to) {
+            return new int[] { fetch(article, title, from) };
+        }
+        return join(spans, ((long) title << 32) | ((from & 0xFFFFL) << 16) | (to & 0xFFFFL), new Callable<int[]>() {
+            @Override
+            public int[] call() throws IOException {
+                // Other fetches may have completed since we looked up the cache
+                int[] counts = new int[to - from + 1];
+                boolean complete = true;
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = cache.lookup(title, from + i);
+                    complete &= counts[i] >= 0;
+                }
+                return complete ? counts : request(article, title, from, counts);
+            }
+        });
+    }
+
+    /**
+     * Returns the id of the given article, or null if there is none. Searches Google Scholar and stores
+     * the result in the cache of ids, unless it is cached. If the same title is already being searched,
+     * joins this search instead.
+     * @param article
+     * @param title
+     * @return
+     * @throws IOException
+     */
+    private String getId(final ElementArticle article, final int title) throws IOException {
+        if (ids.contains(title)) {
+            return ids.get(title);
+        }
+        return join(searches, title, new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                // Another search may have completed since we looked up the cache
+                if (ids.contains(title)) {
+                    return ids.get(title);
+                }
+                String id;
+                long start = metrics.start();
+                try {
+                    id = source.getId(article.getValue());
+                } finally {
+                    metrics.stop(Stage.ID, start);
+                }
+                ids.put(title, id);
+                ids.persist();
+                return id;
+            }
+        });
+    }
+
+    /**
+     * Runs the given task, unless a task with the same key is in flight, in which case its result is
+     * awaited instead
+     * @param flights Tasks in flight
+     * @param key
+     * @param callable
+     * @return
+     * @throws IOException
+     */
+    private <K, V> V join(ConcurrentMap<K, FutureTask<V>> flights, K key, Callable<V> callable) throws IOException {
+
+        // Join a task in flight
+        FutureTask<V> task = new FutureTask<V>(callable);
+        FutureTask<V> flight = flights.putIfAbsent(key, task);
+        if (flight != null) {
+            coalesced.incrementAndGet();
+            return await(flight);
+        }
+
+        // Run
+        try {
+            task.run();
+            return await(task);
+        } finally {
+            flights.remove(key, task);
+        }
+    }
+
+    /**
+     * Returns whether all counts of the given span of the histogram are cached
+     * @param counts
+     * @param low First index of the span
+     * @param high Last index of the span
+     * @return
+     */
+    private boolean isCached(int[] counts, int low, int high) {
+        for (int i = low; i <= high; i++) {
+            if (counts[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks up the count for the given title and year in the cache and counts a hit or a miss
+     * @param title
+     * @param year
+     * @return The count, or a negative value if there is none
+     */
+    private int lookup(int title, int year) {
+        int count = cache.lookup(title, year);
+        metrics.lookup(count >= 0);
+        return count;
+    }
+
+    /**
+     * Requests the citation count of the given article in the given year from Google Scholar and
+     * stores it in the cache
+     * @param article
+     * @param title
+     * @param year
+     * @return
+     * @throws IOException
+     */
+    private int request(ElementArticle article, int title, int year) throws IOException {
+
+        // If we did not find an id, there are no citations
+        String id = getId(article, title);
+        int count;
+        if (id == null) {
+            count = 0;
+        } else {
+
+            // Retrieve and convert
+            count = getCount(id, year, year);
+        }
+        cache.put(title, year, count);
+        cache.persist();
+        return count;
+    }
+
+    /**
+     * Requests the citation counts of the given article in a span of years from Google Scholar as a
+     * histogram, and stores the counts that were not cached in the cache, with one write per run of
+     * consecutive years
+     * @param article
+     * @param title
+     * @param from First year
+     * @param counts Count for each year, which is negative if it is not cached
+     * @return
+     * @throws IOException
+     */
+    private int[] request(ElementArticle article, int title, int from, int[] counts) throws IOException {
+
+        // If we did not find an id, there are no citations
+        int[] cached = counts.clone();
+        String id = getId(article, title);
+        if (id == null) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = Math.max(counts[i], 0);
+            }
+        } else {
+            bisect(id, from, counts, 0, counts.length - 1, getCount(id, from, counts, 0, counts.length - 1));
+        }
+
+        // Store the counts that were missing
+        int start = 0;
+        while (start < counts.length) {
+            if (cached[start] >= 0) {
+                start++;
+                continue;
+            }
+            int end = start;
+            while (end < counts.length && cached[end] < 0) {
+                end++;
+            }
+            cache.put(title, from + start, Arrays.copyOfRange(counts, start, end));
+            start = end;
+        }
+        cache.persist();
+        return counts;
+    }
+
+    /**
+     * Returns a task that fetches the citation counts of the given article in the given span of years
+     * @param article
+     * @param title
+     * @param from First year
+     * @param to Last year
+     * @return
+     */
+    private Callable<int[]> getTask(final ElementArticle article, final int title, final int from, final int to) {
+        return new Callable<int[]>() {
+            @Override
+            public int[] call() throws IOException {
+                return fetch(article, title, from, to);
+            }
+        };
+    }
+
+    /**
+     * Returns the pool of threads, or null if there is only one thread. Idle threads are stopped after
+     * a minute.
+     * @return
+     */
+    private synchronized ExecutorService getExecutor() {
+        if (threads == 1) {
+            return null;
+        }
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private int next = 0;
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Citation fetcher " + (next++));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
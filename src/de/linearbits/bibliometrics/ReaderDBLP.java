@@ -11,17 +11,22 @@
  */
 package de.linearbits.bibliometrics;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * A simple reader for the DBLP XML dump
@@ -30,13 +35,227 @@ import org.xml.sax.helpers.DefaultHandler;
  *
  */
 class ReaderDBLP {
-    
+
+    /**
+     * Receives records from a {@link RecordHandler}
+     * @author Fabian Prasser
+     */
+    static interface RecordListener {
+
+        /**
+         * Called at the start of each record, when only type, key and mdate are known. If false is returned,
+         * the fields of the record are skipped. May be called concurrently.
+         * @param record
+         * @return
+         */
+        boolean accept(RecordDBLP record);
+
+        /**
+         * Called for each record
+         * @param record
+         */
+        void record(RecordDBLP record);
+    }
+
+    /**
+     * Buffers the records of one chunk
+     * @author Fabian Prasser
+     */
+    private static class RecordBuffer implements RecordListener {
+
+        /** Listener that receives the records eventually*/
+        private final RecordListener   listener;
+        /** Records*/
+        private final List<RecordDBLP> records = new ArrayList<RecordDBLP>();
+
+        /**
+         * Creates a new instance
+         * @param listener
+         */
+        RecordBuffer(RecordListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean accept(RecordDBLP record) {
+            return listener.accept(record);
+        }
+
+        @Override
+        public void record(RecordDBLP record) {
+            records.add(record);
+        }
+    }
+
+    /**
+     * Assembles the top-level records of the dump and forwards them to a listener
+     * @author Fabian Prasser
+     */
+    private static class RecordHandler extends DBLPHandler {
+
+        /** Listener*/
+        private final RecordListener listener;
+        /** Current record*/
+        private RecordDBLP           record;
+        /** Current field, or null if it is not needed*/
+        private String               field;
+        /** Depth*/
+        private int                  depth   = 0;
+        /** Buffer*/
+        private StringBuilder        builder = new StringBuilder();
+
+        /**
+         * Creates a new instance
+         * @param listener
+         */
+        RecordHandler(RecordListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (depth >= 3 && field != null) {
+                builder.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String namespaceURI, String localName,
+                               String rawName) throws SAXException {
+            if (depth == 3) {
+                if (field != null) {
+                    record.setValue(field, builder.toString());
+                }
+            } else if (depth == 2) {
+                listener.record(record);
+                record = null;
+            }
+            depth--;
+        }
+
+        @Override
+        void merge(DBLPHandler handler) {
+            for (RecordDBLP record : ((RecordBuffer) ((RecordHandler) handler).listener).records) {
+                listener.record(record);
+            }
+        }
+
+        @Override
+        DBLPHandler split() {
+            return new RecordHandler(new RecordBuffer(listener));
+        }
+
+        @Override
+        public void startElement(String namespaceURI, String localName,
+                                 String rawName, Attributes atts) throws SAXException {
+            depth++;
+            if (depth == 2) {
+                record = new RecordDBLP(rawName, atts.getValue("key"), atts.getValue("mdate"));
+                record.setComplete(listener.accept(record));
+            } else if (depth == 3) {
+                field = record.isComplete() && RecordDBLP.isSupported(rawName) ? rawName : null;
+                builder.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Answers a batch of queries from a stream of records
+     * @author Fabian Prasser
+     */
+    private static class BatchListener implements RecordListener {
+
+        /** Queries by field and venue*/
+        private final Map<String, Map<String, List<QueryDBLP>>> queries = new HashMap<String, Map<String, List<QueryDBLP>>>();
+
+        /**
+         * Creates a new instance
+         * @param queries
+         */
+        BatchListener(List<QueryDBLP> queries) {
+            for (QueryDBLP query : queries) {
+                Map<String, List<QueryDBLP>> venues = this.queries.get(query.getField());
+                if (venues == null) {
+                    venues = new HashMap<String, List<QueryDBLP>>();
+                    this.queries.put(query.getField(), venues);
+                }
+                List<QueryDBLP> list = venues.get(query.getValue());
+                if (list == null) {
+                    list = new ArrayList<QueryDBLP>();
+                    venues.put(query.getValue(), list);
+                }
+                list.add(query);
+            }
+        }
+
+        @Override
+        public boolean accept(RecordDBLP record) {
+            return true;
+        }
+
+        @Override
+        public void record(RecordDBLP record) {
+            for (Entry<String, Map<String, List<QueryDBLP>>> entry : queries.entrySet()) {
+                List<QueryDBLP> list = entry.getValue().get(record.getValue(entry.getKey()));
+                if (list != null) {
+                    for (QueryDBLP query : list) {
+                        if (query.matches(record)) {
+                            query.add(record.getTitle());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the publications of a batch of authors from a stream of records
+     * @author Fabian Prasser
+     */
+    private static class AuthorListener implements RecordListener {
+
+        /** Queries by author*/
+        private final Map<String, List<QueryAuthor>> queries = new HashMap<String, List<QueryAuthor>>();
+
+        /**
+         * Creates a new instance
+         * @param queries
+         */
+        AuthorListener(List<QueryAuthor> queries) {
+            for (QueryAuthor query : queries) {
+                List<QueryAuthor> list = this.queries.get(query.getAuthor());
+                if (list == null) {
+                    list = new ArrayList<QueryAuthor>();
+                    this.queries.put(query.getAuthor(), list);
+                }
+                list.add(query);
+            }
+        }
+
+        @Override
+        public boolean accept(RecordDBLP record) {
+            return true;
+        }
+
+        @Override
+        public void record(RecordDBLP record) {
+            for (String author : record.getAuthors()) {
+                List<QueryAuthor> list = queries.get(author);
+                if (list != null) {
+                    for (QueryAuthor query : list) {
+                        query.add(record.getYear(), record.getTitle());
+                    }
+                }
+            }
+        }
+    }
+
    /**
  * Collects data
  * @author Fabian Prasser
  *
  */
-private static class CollectionHandler extends DefaultHandler {
+private static class CollectionHandler extends DBLPHandler {
 
     /** Key*/
     private final String      key;
@@ -58,7 +277,7 @@ private static class CollectionHandler extends DefaultHandler {
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
         if (collect) {
-            builder.append(new String(ch, start, length));
+            builder.append(ch, start, length);
         }
     }
 
@@ -79,6 +298,16 @@ private static class CollectionHandler extends DefaultHandler {
         return this.collection;
     }
 
+    @Override
+    void merge(DBLPHandler handler) {
+        collection.addAll(((CollectionHandler) handler).collection);
+    }
+
+    @Override
+    DBLPHandler split() {
+        return new CollectionHandler(key);
+    }
+
     @Override
     public void startElement(String namespaceURI, String localName,
                              String rawName, Attributes atts) throws SAXException {
@@ -94,10 +323,12 @@ private static class CollectionHandler extends DefaultHandler {
  * Collects data
  * @author Fabian Prasser
  */
-private static class CollectionHandler2 extends DefaultHandler {
+private static class CollectionHandler2 extends DBLPHandler {
 
-    /** Context*/
-    private String context;
+    /** Context: 1, 2 or 3 while inside tag1, tag2 or tag3, 0 otherwise*/
+    private int context = 0;
+    /** Depth*/
+    private int depth   = 0;
     
     /** Tag*/
     private final String      tag1;
@@ -141,14 +372,16 @@ private static class CollectionHandler2 extends DefaultHandler {
 
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
-        if (context != null) {
-            if (context.equals(tag1)) {
-                builder1.append(new String(ch, start, length));
-            } else if (context.equals(tag2)) {
-                builder2.append(new String(ch, start, length));
-            } else if (context.equals(tag3)) {
-                builder3.append(new String(ch, start, length));
-            }
+        switch (context) {
+        case 1:
+            builder1.append(ch, start, length);
+            break;
+        case 2:
+            builder2.append(ch, start, length);
+            break;
+        case 3:
+            builder3.append(ch, start, length);
+            break;
         }
     }
 
@@ -160,11 +393,18 @@ private static class CollectionHandler2 extends DefaultHandler {
                 builder2.toString().equals(value2)) {
                 collection.add(builder3.toString());
             }
+        }
+        // Reset at the end of every record, not only of records of type tag4
+        if (depth == 2) {
             builder1.setLength(0);
             builder2.setLength(0);
             builder3.setLength(0);
         }
-        this.context = null;
+        // Text of nested markup, e.g. in titles, belongs to the enclosing field
+        if (depth == 3) {
+            this.context = 0;
+        }
+        this.depth--;
     }
 
     /** Returns the collection*/
@@ -172,17 +412,64 @@ private static class CollectionHandler2 extends DefaultHandler {
         return this.collection;
     }
 
+    @Override
+    void merge(DBLPHandler handler) {
+        collection.addAll(((CollectionHandler2) handler).collection);
+    }
+
+    @Override
+    DBLPHandler split() {
+        return new CollectionHandler2(tag1, value1, tag2, value2, tag3, tag4);
+    }
+
     @Override
     public void startElement(String namespaceURI, String localName,
                              String rawName, Attributes atts) throws SAXException {
 
-        this.context = rawName;
+        this.depth++;
+        if (depth == 3) {
+            if (rawName.equals(tag1)) {
+                this.context = 1;
+            } else if (rawName.equals(tag2)) {
+                this.context = 2;
+            } else if (rawName.equals(tag3)) {
+                this.context = 3;
+            } else {
+                this.context = 0;
+            }
+        }
     }
 }
 
-    ReaderDBLP() {
-            // Empty by design
-        }
+    /** The DBLP XML dump, optionally gzip-compressed*/
+    private File                          source;
+    /** The index*/
+    private File                          file;
+    /** The index, loaded lazily*/
+    private IndexDBLP                     index    = null;
+    /** Whether to use the index*/
+    private boolean                       indexed  = true;
+    /** Number of threads used for parsing*/
+    private int                           threads  = 1;
+    /** Parser engine*/
+    private DBLPParser                    parser   = new DBLPParserSAX();
+    /** N-gram indices for the values of fields, derived lazily from the index*/
+    private final Map<String, IndexNGram> ngrams   = new HashMap<String, IndexNGram>();
+    /** The index from which the n-gram indices have been derived*/
+    private IndexDBLP                     ngramsOf = null;
+    /** Statistics*/
+    private final Metrics                 metrics;
+
+    /**
+     * Creates a new instance for the given dump. The dump may be gzip-compressed, if its name ends with ".gz".
+     * The index is stored next to the dump.
+     * @param source
+     * @param metrics
+     */
+    ReaderDBLP(File source, Metrics metrics) {
+        this.metrics = metrics;
+        setSource(source);
+    }
 
     /**
      * Starts the collection
@@ -196,34 +483,286 @@ private static class CollectionHandler2 extends DefaultHandler {
      * @throws IOException
      */
     public Set<String> collect(String tag1, String value1, String tag2, String value2, String tag3, String tag4) throws IOException {
+        long start = metrics.start();
         try {
-            SAXParserFactory parserFactory = SAXParserFactory.newInstance();
-            SAXParser parser = parserFactory.newSAXParser();
+            Set<String> result = indexed ? getIndex().collect(tag1, value1, tag2, value2, tag3, tag4) : null;
+            if (result != null) {
+                return result;
+            }
             CollectionHandler2 handler = new CollectionHandler2(tag1, value1, tag2, value2, tag3, tag4);
-            parser.getXMLReader().setFeature("http://xml.org/sax/features/validation", true);
-            parser.parse(new File("data/dblp.xml"), handler);
+            parse(handler);
             return handler.getCollection();
-        } catch (Exception e) {
-            throw (new IOException("Error parsing DBLP", e));
+        } finally {
+            metrics.stop(Stage.DBLP, start);
         }
     }
 
     /**
-        * Collects data 
-        * @param field
-        * @return
-        * @throws IOException
-        */
-        Set<String> collect(String field) throws IOException {
-            try {
-                SAXParserFactory parserFactory = SAXParserFactory.newInstance();
-                SAXParser parser = parserFactory.newSAXParser();
-                CollectionHandler handler = new CollectionHandler(field);
-                parser.getXMLReader().setFeature("http://xml.org/sax/features/validation", true);
-                parser.parse(new File("data/dblp.xml"), handler);
-                return handler.getCollection();
-             } catch (Exception e) {
-                throw(new IOException("Error parsing DBLP", e));
-             }
+     * Answers all given queries in one pass over the index or, if the index is disabled, in one pass over the dump
+     * @param queries
+     * @throws IOException
+     */
+    void collect(List<QueryDBLP> queries) throws IOException {
+        long start = metrics.start();
+        try {
+            if (indexed) {
+                getIndex().collect(queries);
+            } else {
+                parse(new RecordHandler(new BatchListener(queries)));
+            }
+        } finally {
+            metrics.stop(Stage.DBLP, start);
         }
+    }
+
+    /**
+     * Collects the publications of all given authors in one pass over the index or, if the index is disabled, in one pass over the dump
+     * @param queries
+     * @throws IOException
+     */
+    void collectPublications(List<QueryAuthor> queries) throws IOException {
+        long start = metrics.start();
+        try {
+            if (indexed) {
+                getIndex().collectPublications(queries);
+            } else {
+                parse(new RecordHandler(new AuthorListener(queries)));
+            }
+        } finally {
+            metrics.stop(Stage.DBLP, start);
+        }
+    }
+
+    /**
+     * Builds the index, if it does not exist or if it is out of date
+     * @throws IOException
+     */
+    void buildIndex() throws IOException {
+        getIndex();
+    }
+
+    /**
+     * Collects data 
+     * @param field
+     * @return
+     * @throws IOException
+     */
+    Set<String> collect(String field) throws IOException {
+        long start = metrics.start();
+        try {
+            Set<String> result = indexed ? getIndex().collect(field) : null;
+            if (result != null) {
+                return result;
+            }
+            CollectionHandler handler = new CollectionHandler(field);
+            parse(handler);
+            return handler.getCollection();
+        } finally {
+            metrics.stop(Stage.DBLP, start);
+        }
+    }
+
+    /**
+     * Returns all values of the given field that contain the given value, in sorted order
+     * @param field
+     * @param value
+     * @return
+     * @throws IOException
+     */
+    List<String> find(String field, String value) throws IOException {
+        long start = metrics.start();
+        try {
+            IndexNGram ngram = indexed ? getIndex(field) : null;
+            if (ngram != null) {
+                return ngram.find(value);
+            }
+        } finally {
+            metrics.stop(Stage.DBLP, start);
+        }
+        List<String> result = new ArrayList<String>();
+        for (String element : collect(field)) {
+            if (element.contains(value)) {
+                result.add(element);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns all values of the given field that start with the given value, in sorted order
+     * @param field
+     * @param prefix
+     * @return
+     * @throws IOException
+     */
+    List<String> findPrefix(String field, String prefix) throws IOException {
+        long start = metrics.start();
+        try {
+            IndexNGram ngram = indexed ? getIndex(field) : null;
+            if (ngram != null) {
+                return ngram.findPrefix(prefix);
+            }
+        } finally {
+            metrics.stop(Stage.DBLP, start);
+        }
+        List<String> result = new ArrayList<String>();
+        for (String element : collect(field)) {
+            if (element.startsWith(prefix)) {
+                result.add(element);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Enables or disables the index. If disabled, every query is answered by parsing the dump.
+     * @param indexed
+     */
+    void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    /**
+     * Selects the parser engine. The fast engine is a non-validating StAX parser, the default engine is a validating SAX parser.
+     * @param fast
+     * @throws IOException
+     */
+    void setFastParser(boolean fast) throws IOException {
+        this.parser = fast ? new DBLPParserStAX(new File(source.getParentFile(), "dblp.dtd")) : new DBLPParserSAX();
+    }
+
+    /**
+     * Sets the number of threads used for parsing the dump. If larger than one, the dump is split into chunks that are parsed concurrently.
+     * Compressed dumps are always parsed sequentially.
+     * @param threads
+     */
+    void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Switches to a newer version of the dump. The index is derived from the existing index by comparing
+     * records by key and mdate, so that only records that have been added, changed or removed are read
+     * from the new dump. Returns all titles that have been changed or removed.
+     * @param dump
+     * @return
+     * @throws IOException
+     */
+    synchronized Set<String> update(File dump) throws IOException {
+
+        // Without an existing index, we build from scratch
+        IndexDBLP previous = index != null ? index : IndexDBLP.load(file, null);
+        setSource(dump);
+        if (previous == null) {
+            getIndex();
+            return new HashSet<String>();
+        }
+
+        // Update
+        IndexDBLP.Updater updater = new IndexDBLP.Updater(previous);
+        parse(new RecordHandler(updater));
+        index = updater.build(source);
+        index.write(file);
+        return updater.getTitles();
+    }
+
+    /**
+     * Returns the index. Loads it from disk or builds it from the XML dump, if needed.
+     * @return
+     * @throws IOException
+     */
+    private synchronized IndexDBLP getIndex() throws IOException {
+
+        // Still valid
+        if (index != null && index.isCurrent(source)) {
+            return index;
+        }
+
+        // Load
+        index = IndexDBLP.load(file, source);
+        if (index != null) {
+            return index;
+        }
+
+        // Build
+        IndexDBLP.Builder builder = new IndexDBLP.Builder();
+        parse(new RecordHandler(builder));
+        index = builder.build(source);
+        index.write(file);
+        return index;
+    }
+
+    /**
+     * Returns the n-gram index for the values of the given field. Builds it, if needed.
+     * Returns null, if the field is not indexed.
+     * @param field
+     * @return
+     * @throws IOException
+     */
+    private synchronized IndexNGram getIndex(String field) throws IOException {
+
+        // Invalidate, if the index has changed
+        IndexDBLP index = getIndex();
+        if (index != ngramsOf) {
+            ngrams.clear();
+            ngramsOf = index;
+        }
+
+        // Build
+        IndexNGram result = ngrams.get(field);
+        if (result == null) {
+            int[] values = index.getValues(field);
+            if (values == null) {
+                return null;
+            }
+            result = new IndexNGram(index.getStrings(), values);
+            ngrams.put(field, result);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the dump. The index is stored next to it.
+     * @param source
+     */
+    private void setSource(File source) {
+        String name = source.getName();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".xml")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        this.source = source;
+        this.file = new File(source.getParentFile(), name + ".idx");
+        this.index = null;
+    }
+
+    /**
+     * Parses the XML dump with the given handler
+     * @param handler
+     * @throws IOException
+     */
+    private void parse(DBLPHandler handler) throws IOException {
+
+        // Compressed dumps cannot be split
+        boolean compressed = source.getName().endsWith(".gz");
+        if (threads > 1 && !compressed) {
+            new ParallelParser(source, threads, parser).parse(handler);
+            return;
+        }
+
+        // Parse sequentially
+        InputStream input = compressed ? new PipedGZIPInputStream(source) : new BufferedInputStream(new FileInputStream(source), 1 << 16);
+        try {
+            parser.parse(input, source.toURI().toString(), handler);
+        } finally {
+            input.close();
+        }
+    }
 }
@@ -11,36 +11,92 @@
  */
 package de.linearbits.bibliometrics;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.net.URLConnection;
-import java.nio.charset.Charset;
-import java.util.Map;
+import java.util.Arrays;
 
-import org.ccil.cowan.tagsoup.jaxp.SAXParserImpl;
+import org.xml.sax.Attributes;
 
 /**
  * Reads data from GS
  * @author Fabian Prasser
  *
  */
-class ReaderGoogleScholar {
+class ReaderGoogleScholar implements CitationSource {
+
+    /**
+     * Reads a page of GS. Stops when the page is a captcha.
+     * @author Fabian Prasser
+     */
+    static abstract class PageReader extends HTMLHandler {
+
+        /** Flag*/
+        private boolean captcha = false;
+
+        /**
+         * Creates a new instance
+         * @param tags Tags of interest, in addition to forms
+         */
+        PageReader(String... tags) {
+            super(append(tags, "form"));
+        }
+
+        /**
+         * Appends a tag to the given tags
+         * @param tags
+         * @param tag
+         * @return
+         */
+        private static String[] append(String[] tags, String tag) {
+            String[] result = Arrays.copyOf(tags, tags.length + 1);
+            result[tags.length] = tag;
+            return result;
+        }
+
+        /**
+         * Returns whether the page is a captcha
+         * @return
+         */
+        public boolean isCaptcha() {
+            return this.captcha;
+        }
+
+        /**
+         * Checks whether the given element belongs to a captcha, and stops if this is the case
+         * @param attributes
+         * @return
+         */
+        protected boolean isCaptcha(Attributes attributes) {
+            if ("gs_captcha_f".equals(attributes.getValue("id"))) {
+                this.captcha = true;
+                stop();
+            }
+            return this.captcha;
+        }
+
+        @Override
+        protected void reset() {
+            this.captcha = false;
+        }
+    }
     
     /**
      * Reads citation counts
      * @author Fabian Prasser
      */
-    private static class CountReader extends HTMLHandler {
+    static class CountReader extends PageReader {
         
         /** Flag*/
         private boolean collect = false;
         /** Count*/
         private String count = null;
 
+        /**
+         * Creates a new instance
+         */
+        CountReader() {
+            super("div");
+        }
+
         /**
          * Returns the count
          * @return
@@ -56,6 +112,11 @@ class ReaderGoogleScholar {
             if (tag != null && tag.equals("div") && collect && count == null) {
                 count = "0";
             }
+            
+            // Done
+            if (count != null) {
+                stop();
+            }
         }
 
         @Override
@@ -71,32 +132,44 @@ class ReaderGoogleScholar {
                 // Some results
                 } else {
                     
-                    String count = payload.split(" ")[0];
+                    // Remove thousands separators
+                    String[] tokens = payload.replace(".", "").replace(",", "").split(" ");
+                    String count = tokens[0];
                     
                     try {
                         // Case "x results"
                         Integer.valueOf(count);
                     } catch (Exception e) {
                         // Case "About x results"
-                        count = payload.split(" ")[1];
+                        count = tokens[1];
                     }
                     
                     if (this.count == null) {
                         this.count = count;
                     }
                 }
+                
+                // Done
+                stop();
             }
         }        
+
+        @Override
+        protected void reset() {
+            super.reset();
+            this.collect = false;
+            this.count = null;
+        }
         
         @Override
-        protected void start(String tag, Map<String, String> attributes) {
+        protected void start(String tag, Attributes attributes) {
 
-            if (tag != null && tag.equals("div") && attributes != null &&
-                attributes.containsKey("id") && attributes.get("id").equals("gs_ab_md")) {
-                collect = true;
-            } else {
-                collect = false;
+            if (isCaptcha(attributes)) {
+                return;
             }
+
+            collect = tag.equals("div") && "gs_ab_md".equals(attributes.getValue("id"));
+            setCollecting(collect);
         }
     }
     
@@ -105,13 +178,20 @@ class ReaderGoogleScholar {
      * @author Fabian Prasser
      *
      */
-    private static class IDReader extends HTMLHandler {
+    static class IDReader extends PageReader {
 
         /** Id*/
         private String id        = null;
         /** Count*/
         private int    countGsID = 0;
 
+        /**
+         * Creates a new instance
+         */
+        IDReader() {
+            super("div", "a");
+        }
+
         /**
          * Returns the id
          * @return
@@ -129,117 +209,110 @@ class ReaderGoogleScholar {
         protected void payload(String payload) {
             // Empty by design
         }        
+
+        @Override
+        protected void reset() {
+            super.reset();
+            this.id = null;
+            this.countGsID = 0;
+        }
         
         @Override
-        protected void start(String tag, Map<String, String> attributes) {
+        protected void start(String tag, Attributes attributes) {
+
+            if (isCaptcha(attributes)) {
+                return;
+            }
 
             // We only extract from the first entry
             if (this.countGsID == 1) {
-                if (tag != null && tag.equals("a") && attributes != null &&
-                    attributes.containsKey("href") && attributes.get("href").startsWith("/scholar?cites=")) {
-                    String id = attributes.get("href");
-                    id = id.substring(15);
+                String href = tag.equals("a") ? attributes.getValue("href") : null;
+                if (href != null && href.startsWith("/scholar?cites=")) {
+                    String id = href.substring(15);
                     id = id.split("&")[0];
                     if (this.id == null) {
                         this.id = id;
+                        stop();
                     }
                 }
             }
             
             // Count entries
-            if (tag != null && tag.equals("div") && attributes != null &&
-                    attributes.containsKey("class") && attributes.get("class").equals("gs_ri")) {
+            if (tag.equals("div") && "gs_ri".equals(attributes.getValue("class"))) {
                 this.countGsID++;
             }
+
+            // Done, if the first entry has no citations
+            if (this.countGsID > 1) {
+                stop();
+            }
             
         }
     }
 
     private static final String AGENT = "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.1; .NET CLR 1.0.3705; .NET CLR 1.1.4322; .NET CLR 1.2.30703)";
 
-    /** Charset*/
-    private static final Charset CHARSET = Charset.defaultCharset();
+    /** Default host*/
+    static final String          HOST    = "https://scholar.google.de";
+
+    /** Host*/
+    private final String         host;
+    /** Client*/
+    private final HTTPClient     client;
+    /** Statistics*/
+    private final Metrics        metrics;
 
     /**
-     * Reads all data from the given URL
-     * @param url
-     * @return
-     * @throws IOException
+     * Creates a new instance, which reads from the given host, e.g. {@link #HOST} or a local stub
+     * @param host
+     * @param throttle
+     * @param metrics
      */
-    private String read(String url) throws IOException {
-
-        try {
-            StringBuilder builder = new StringBuilder();
-            URLConnection connection = new URL(url).openConnection();
-            connection.setConnectTimeout(4000);
-            connection.setReadTimeout(4000);
-            connection.setRequestProperty("User-Agent", AGENT);
-            BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), CHARSET));
-            String line;
-            while ((line = in.readLine()) != null) {
-                builder.append(line).append("\n");
-            }
-            in.close();
-            
-            return builder.toString();
-        } catch (Exception e) {
-            throw new IOException("Error parsing Google Scholar", e);
-        }
+    ReaderGoogleScholar(String host, Throttle throttle, Metrics metrics) {
+        this.host = host;
+        this.metrics = metrics;
+        this.client = new HTTPClient(AGENT, throttle, metrics);
     }
 
     /**
-     * Returns the citation count for the given title
-     * @param id
-     * @param from
-     * @param to
+     * Returns the client
      * @return
-     * @throws IOException
      */
-    String getCitationCount(String id, String from, String to) throws IOException {
+    HTTPClient getClient() {
+        return client;
+    }
+
+    @Override
+    public int getCitationCount(String id, int from, int to) throws IOException {
 
-        String url = "https://scholar.google.de/scholar?hl=de&as_sdt=2005&sciodt=0%2C5&cites=" + id + "&scipsc=&as_ylo=" + from +
+        String url = host + "/scholar?hl=de&as_sdt=2005&sciodt=0%2C5&cites=" + id + "&scipsc=&as_ylo=" + from +
                      "&as_yhi=" + to;
     
+        CountReader reader = new CountReader();
+        client.get(url, reader);
+        if (reader.isCaptcha()) {
+            metrics.captcha();
+            throw new IOException("Error parsing Google Scholar. Locked out!");
+        }
         try {
-            String html = read(url);
-            
-            if (html.contains("gs_captcha_f")) {
-                throw new IOException("Error parsing Google Scholar. Locked out!");
-            }
-
-            InputStream input = new ByteArrayInputStream(html.getBytes(CHARSET));
-            CountReader reader = new CountReader();
-            SAXParserImpl.newInstance(null).parse(input, reader);
-            return reader.getCount();
-        } catch (Exception e) {
-            throw new IOException("Error parsing Google Scholar", e);
+            return Integer.valueOf(reader.getCount());
+        } catch (NumberFormatException e) {
+            throw new IOException("Error parsing Google Scholar. Locked out?");
         }
     }
 
-    /**
-     * Returns the id for the given title
-     * @param title
-     * @return
-     * @throws IOException
-     */
-    String getId(String title) throws IOException {
+    @Override
+    public String getId(String title) throws IOException {
 
         String query = title.replace(" ", "+");
-        String url = "https://scholar.google.de/scholar?hl=de&q=" + query + "&btnG=&lr=";
+        String url = host + "/scholar?hl=de&q=" + query + "&btnG=&lr=";
         
-        try {
-            String html = read(url);
-            
-            if (html.contains("gs_captcha_f")) {
-                throw new IOException("Error parsing Google Scholar. Locked out!");
-            }
-            
-            InputStream input = new ByteArrayInputStream(html.getBytes(CHARSET));
-            IDReader reader = new IDReader();
-            SAXParserImpl.newInstance(null).parse(input, reader);
-            return reader.getId();
-        } catch (Exception e) {
-            throw new IOException("Error parsing Google Scholar", e);
+        IDReader reader = new IDReader();
+        client.get(url, reader);
+        if (reader.isCaptcha()) {
+            metrics.captcha();
+            throw new IOException("Error parsing Google Scholar. Locked out!");
         }
+        return reader.getId();
     }
 }
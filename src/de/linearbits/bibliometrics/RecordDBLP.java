@@ -0,0 +1,198 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A top-level record from the DBLP XML dump, e.g. an article or inproceedings
+ *
+ * @author Fabian Prasser
+ */
+class RecordDBLP {
+
+    /** Type*/
+    private final String       type;
+    /** Key*/
+    private final String       key;
+    /** Date of last modification, as yyyymmdd*/
+    private final int          mdate;
+    /** Whether the fields have been read*/
+    private boolean            complete = true;
+    /** Journal*/
+    private String             journal;
+    /** Booktitle*/
+    private String             booktitle;
+    /** Year*/
+    private String             year;
+    /** Title*/
+    private String             title;
+    /** Authors*/
+    private final List<String> authors = new ArrayList<String>();
+
+    /**
+     * Creates a new instance
+     * @param type
+     * @param key
+     * @param mdate Date of last modification, as yyyy-mm-dd, or null
+     */
+    RecordDBLP(String type, String key, String mdate) {
+        this.type = type;
+        this.key = key;
+        int date = 0;
+        if (mdate != null) {
+            try {
+                date = Integer.parseInt(mdate.replace("-", ""));
+            } catch (NumberFormatException e) {
+                // Ignore
+            }
+        }
+        this.mdate = date;
+    }
+
+    /**
+     * Returns whether the given field is single-valued and covered by this class
+     * @param field
+     * @return
+     */
+    static boolean isSingleValued(String field) {
+        return field.equals("journal") || field.equals("booktitle") || field.equals("year") || field.equals("title");
+    }
+
+    /**
+     * Returns whether the given field is covered by this class
+     * @param field
+     * @return
+     */
+    static boolean isSupported(String field) {
+        return isSingleValued(field) || field.equals("author");
+    }
+
+    /**
+     * Returns the authors
+     * @return
+     */
+    List<String> getAuthors() {
+        return authors;
+    }
+
+    /**
+     * Returns the booktitle, or null
+     * @return
+     */
+    String getBooktitle() {
+        return booktitle;
+    }
+
+    /**
+     * Returns the journal, or null
+     * @return
+     */
+    String getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns the key, or null
+     * @return
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the date of last modification, as yyyymmdd, or 0
+     * @return
+     */
+    int getMdate() {
+        return mdate;
+    }
+
+    /**
+     * Returns the title, or null
+     * @return
+     */
+    String getTitle() {
+        return title;
+    }
+
+    /**
+     * Returns the type
+     * @return
+     */
+    String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the value of the given single-valued field, or null
+     * @param field
+     * @return
+     */
+    String getValue(String field) {
+        if (field.equals("journal")) {
+            return journal;
+        } else if (field.equals("booktitle")) {
+            return booktitle;
+        } else if (field.equals("year")) {
+            return year;
+        } else if (field.equals("title")) {
+            return title;
+        } else {
+            throw new IllegalArgumentException("Unsupported field: " + field);
+        }
+    }
+
+    /**
+     * Returns the year, or null
+     * @return
+     */
+    String getYear() {
+        return year;
+    }
+
+    /**
+     * Returns whether the fields of this record have been read. If not, only type, key and mdate are available.
+     * @return
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Sets whether the fields of this record have been read
+     * @param complete
+     */
+    void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    /**
+     * Sets the value of the given field. Unsupported fields are ignored.
+     * @param field
+     * @param value
+     */
+    void setValue(String field, String value) {
+        if (field.equals("journal")) {
+            journal = value;
+        } else if (field.equals("booktitle")) {
+            booktitle = value;
+        } else if (field.equals("year")) {
+            year = value;
+        } else if (field.equals("title")) {
+            title = value;
+        } else if (field.equals("author")) {
+            authors.add(value);
+        }
+    }
+}
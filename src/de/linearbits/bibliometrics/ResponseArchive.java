@@ -0,0 +1,175 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A local archive of raw HTTP responses, by URL. Each response is stored in a file of its own, which
+ * is named after the SHA-1 hash of the URL and contains the URL, the content type, the content encoding
+ * and the body as it has been received, i.e. possibly compressed. Files are replaced atomically, so
+ * that the archive can be written by multiple threads.
+ *
+ * @author Fabian Prasser
+ */
+class ResponseArchive {
+
+    /**
+     * A response
+     * @author Fabian Prasser
+     */
+    static class Response {
+
+        /** Content type, or null*/
+        private final String type;
+        /** Content encoding, or null*/
+        private final String encoding;
+        /** Body*/
+        private final byte[] body;
+
+        /**
+         * Creates a new instance
+         * @param type
+         * @param encoding
+         * @param body
+         */
+        Response(String type, String encoding, byte[] body) {
+            this.type = type;
+            this.encoding = encoding;
+            this.body = body;
+        }
+
+        /**
+         * Returns the body
+         * @return
+         */
+        byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Returns the content encoding, or null
+         * @return
+         */
+        String getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * Returns the content type, or null
+         * @return
+         */
+        String getType() {
+            return type;
+        }
+    }
+
+    /** Charset*/
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Directory*/
+    private final File           directory;
+
+    /**
+     * Creates a new instance
+     * @param directory
+     * @throws IOException
+     */
+    ResponseArchive(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create archive: " + directory);
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the response for the given URL, or null if it has not been archived
+     * @param url
+     * @return
+     * @throws IOException
+     */
+    Response get(String url) throws IOException {
+        File file = getFile(url);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            if (!input.readUTF().equals(url)) {
+                throw new IOException("Hash collision in archive: " + file);
+            }
+            String type = input.readBoolean() ? input.readUTF() : null;
+            String encoding = input.readBoolean() ? input.readUTF() : null;
+            byte[] body = new byte[input.readInt()];
+            input.readFully(body);
+            return new Response(type, encoding, body);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Stores the given response
+     * @param url
+     * @param response
+     * @throws IOException
+     */
+    void put(String url, Response response) throws IOException {
+        File file = getFile(url);
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(temp));
+        try {
+            output.writeUTF(url);
+            output.writeBoolean(response.getType() != null);
+            if (response.getType() != null) {
+                output.writeUTF(response.getType());
+            }
+            output.writeBoolean(response.getEncoding() != null);
+            if (response.getEncoding() != null) {
+                output.writeUTF(response.getEncoding());
+            }
+            output.writeInt(response.getBody().length);
+            output.write(response.getBody());
+        } finally {
+            output.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the file for the given URL
+     * @param url
+     * @return
+     */
+    private File getFile(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(url.getBytes(UTF8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(directory, builder.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+/**
+ * Stages of a computation, for which the time spent is measured
+ * @author Fabian Prasser
+ */
+public enum Stage {
+
+    /** Collecting data from DBLP, by parsing the dump or from the index, including building the index*/
+    DBLP,
+    /** Persisting the cache of citations*/
+    CACHE_PERSIST,
+    /** Sending a request to Google Scholar, until the headers of the response have been received*/
+    HTTP,
+    /** Receiving, decompressing and parsing a page of Google Scholar, which is done at the same time*/
+    HTML,
+    /** Searching the id of a title at the source of citations, including throttling and retries*/
+    ID,
+    /** Fetching a citation count from the source of citations, including throttling and retries*/
+    CITATION_COUNT,
+    /** Computing an impact factor*/
+    IMPACT_FACTOR
+}
@@ -0,0 +1,123 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+/**
+ * Statistics about the time spent in a {@link Stage}. Durations are given in nanoseconds. Bucket
+ * <code>i > 0</code> of the histogram counts durations of at least <code>2^(i-1)</code> and less than
+ * <code>2^i</code> microseconds, bucket <code>0</code> counts durations below one microsecond, and the
+ * last bucket counts all longer durations as well.
+ * @author Fabian Prasser
+ */
+public class StageStatistics {
+
+    /** Stage*/
+    private final Stage  stage;
+    /** Number of measurements*/
+    private final long   count;
+    /** Total duration*/
+    private final long   total;
+    /** Maximal duration*/
+    private final long   maximum;
+    /** Histogram*/
+    private final long[] histogram;
+
+    /**
+     * Creates a new instance
+     * @param stage
+     * @param count
+     * @param total
+     * @param maximum
+     * @param histogram
+     */
+    StageStatistics(Stage stage, long count, long total, long maximum, long[] histogram) {
+        this.stage = stage;
+        this.count = count;
+        this.total = total;
+        this.maximum = maximum;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Returns the number of measurements
+     * @return
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of measurements in each bucket of the histogram
+     * @return
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    /**
+     * Returns the maximal duration
+     * @return
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the mean duration
+     * @return
+     */
+    public double getMean() {
+        return count == 0 ? 0d : (double) total / (double) count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the durations, which is derived from the histogram
+     * @param percentile Between 0 and 100
+     * @return
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0d || percentile > 100d) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        long rank = (long) Math.ceil(percentile / 100d * count);
+        long seen = 0;
+        for (int i = 0; i < histogram.length - 1; i++) {
+            seen += histogram[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min((1L << i) * 1000L, maximum);
+            }
+        }
+        return maximum;
+    }
+
+    /**
+     * Returns the stage
+     * @return
+     */
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * Returns the total duration
+     * @return
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return stage + ": count=" + count + ", total=" + total / 1000000L + "ms, mean=" + (long) getMean() / 1000L + "us, p99=" +
+               getPercentile(99d) / 1000L + "us, max=" + maximum / 1000L + "us";
+    }
+}
@@ -0,0 +1,142 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the statistics about computations, which are collected if enabled, see
+ * {@link Bibliometrics#setStatisticsEnabled(boolean)}
+ * @author Fabian Prasser
+ */
+public class Statistics {
+
+    /** Statistics for each stage*/
+    private final Map<Stage, StageStatistics> stages;
+    /** Counts that have been found in the cache*/
+    private final long                        hits;
+    /** Counts that have not been found in the cache*/
+    private final long                        misses;
+    /** Requests sent to Google Scholar, including retries*/
+    private final long                        requests;
+    /** Retries*/
+    private final long                        retries;
+    /** Captchas received*/
+    private final long                        captchas;
+    /** Bytes received*/
+    private final long                        bytes;
+
+    /**
+     * Creates a new instance
+     * @param stages
+     * @param hits
+     * @param misses
+     * @param requests
+     * @param retries
+     * @param captchas
+     * @param bytes
+     */
+    Statistics(Map<Stage, StageStatistics> stages, long hits, long misses, long requests, long retries, long captchas, long bytes) {
+        this.stages = Collections.unmodifiableMap(stages);
+        this.hits = hits;
+        this.misses = misses;
+        this.requests = requests;
+        this.retries = retries;
+        this.captchas = captchas;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns the number of bytes received from Google Scholar, which is the size of the compressed bodies
+     * @return
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of requested citation counts that have been found in the cache
+     * @return
+     */
+    public long getCacheHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the fraction of requested citation counts that have been found in the cache
+     * @return
+     */
+    public double getCacheHitRate() {
+        return hits + misses == 0 ? 0d : (double) hits / (double) (hits + misses);
+    }
+
+    /**
+     * Returns the number of requested citation counts that have not been found in the cache
+     * @return
+     */
+    public long getCacheMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of captchas received from Google Scholar
+     * @return
+     */
+    public long getCaptchas() {
+        return captchas;
+    }
+
+    /**
+     * Returns the number of requests sent to Google Scholar, including retries
+     * @return
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of retries
+     * @return
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * Returns the statistics for the given stage
+     * @param stage
+     * @return
+     */
+    public StageStatistics getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Returns the statistics for all stages
+     * @return
+     */
+    public Map<Stage, StageStatistics> getStages() {
+        return stages;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("hits=").append(hits).append(", misses=").append(misses).append(", requests=").append(requests);
+        builder.append(", retries=").append(retries).append(", captchas=").append(captchas).append(", bytes=").append(bytes);
+        for (StageStatistics stage : stages.values()) {
+            builder.append("\n").append(stage);
+        }
+        return builder.toString();
+    }
+}
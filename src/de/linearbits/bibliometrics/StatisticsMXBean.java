@@ -0,0 +1,81 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.util.Map;
+
+/**
+ * Management interface for the statistics of an instance of {@link Bibliometrics}, which is registered
+ * with the platform MBean server
+ * @author Fabian Prasser
+ */
+public interface StatisticsMXBean {
+
+    /**
+     * Returns the number of bytes received from Google Scholar
+     * @return
+     */
+    public long getBytes();
+
+    /**
+     * Returns the number of requested citation counts that have been found in the cache
+     * @return
+     */
+    public long getCacheHits();
+
+    /**
+     * Returns the number of requested citation counts that have not been found in the cache
+     * @return
+     */
+    public long getCacheMisses();
+
+    /**
+     * Returns the number of captchas received from Google Scholar
+     * @return
+     */
+    public long getCaptchas();
+
+    /**
+     * Returns the number of requests sent to Google Scholar, including retries
+     * @return
+     */
+    public long getRequests();
+
+    /**
+     * Returns the number of retries
+     * @return
+     */
+    public long getRetries();
+
+    /**
+     * Returns the statistics for all stages, by name
+     * @return
+     */
+    public Map<String, StageStatistics> getStages();
+
+    /**
+     * Returns whether statistics are collected
+     * @return
+     */
+    public boolean isEnabled();
+
+    /**
+     * Resets all statistics
+     */
+    public void reset();
+
+    /**
+     * Enables or disables collecting statistics
+     * @param enabled
+     */
+    public void setEnabled(boolean enabled);
+}
@@ -0,0 +1,105 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Limits the number of requests that are in flight and the rate at which requests are started.
+ * Requests are spaced evenly: each request reserves the next free slot and waits for it, so
+ * that bursts are not possible.
+ *
+ * @author Fabian Prasser
+ */
+class Throttle {
+
+    /** Maximal number of requests in flight*/
+    private int  maximum;
+    /** Number of requests in flight*/
+    private int  running  = 0;
+    /** Minimal distance between the start of two requests, in nanoseconds*/
+    private long interval = 0;
+    /** Earliest start of the next request*/
+    private long next     = System.nanoTime();
+
+    /**
+     * Creates a new instance
+     * @param maximum
+     * @param rate Requests per second, or zero for no limit
+     */
+    Throttle(int maximum, double rate) {
+        setMaximum(maximum);
+        setRate(rate);
+    }
+
+    /**
+     * Waits until a request may be started. Every call must be followed by a call to {@link #release()}.
+     * @throws InterruptedIOException
+     */
+    void acquire() throws InterruptedIOException {
+        long delay;
+        synchronized (this) {
+            while (running >= maximum) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // No slot has been taken yet
+                    throw new InterruptedIOException("Interrupted while waiting for a request");
+                }
+            }
+            running++;
+            long now = System.nanoTime();
+            long start = Math.max(now, next);
+            next = start + interval;
+            delay = start - now;
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay / 1000000L, (int) (delay % 1000000L));
+            } catch (InterruptedException e) {
+                release();
+                throw new InterruptedIOException("Interrupted while waiting for a request");
+            }
+        }
+    }
+
+    /**
+     * Marks a request as finished
+     */
+    synchronized void release() {
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * Sets the maximal number of requests in flight
+     * @param maximum
+     */
+    synchronized void setMaximum(int maximum) {
+        if (maximum < 1) {
+            throw new IllegalArgumentException("Invalid number of requests: " + maximum);
+        }
+        this.maximum = maximum;
+        notifyAll();
+    }
+
+    /**
+     * Sets the maximal number of requests per second, or zero for no limit
+     * @param rate
+     */
+    synchronized void setRate(double rate) {
+        if (rate < 0d || Double.isNaN(rate)) {
+            throw new IllegalArgumentException("Invalid rate: " + rate);
+        }
+        this.interval = rate == 0d ? 0 : (long) (1000000000d / rate);
+    }
+}
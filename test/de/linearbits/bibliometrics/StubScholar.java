@@ -0,0 +1,275 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stub of Google Scholar on a local port. Searches for titles that contain "Captcha" return a
+ * captcha, searches for titles that contain "Unknown" return no results, and all other titles have an
+ * id that is derived from the title. Citation counts are derived from the id and the year, see
+ * {@link #getCount(String, int)}. Error responses can be queued with {@link #fail(int, int)}.
+ *
+ * @author Fabian Prasser
+ */
+class StubScholar {
+
+    /** Charset*/
+    private static final Charset      UTF8     = Charset.forName("UTF-8");
+    /** Id in a query for citations*/
+    private static final Pattern      CITES    = Pattern.compile("cites=([0-9]+)");
+    /** First year in a query for citations*/
+    private static final Pattern      FROM     = Pattern.compile("as_ylo=([0-9]+)");
+    /** Last year in a query for citations*/
+    private static final Pattern      TO       = Pattern.compile("as_yhi=([0-9]+)");
+    /** Title in a search*/
+    private static final Pattern      QUERY    = Pattern.compile("[?&]q=([^&]*)");
+
+    /** Server*/
+    private final HttpServer          server;
+    /** Threads of the server*/
+    private final ExecutorService     executor;
+    /** Number of searches for ids*/
+    private final AtomicInteger       searches = new AtomicInteger();
+    /** Number of queries for citations*/
+    private final AtomicInteger       queries  = new AtomicInteger();
+    /** Number of requests in flight*/
+    private final AtomicInteger       running  = new AtomicInteger();
+    /** Maximal number of requests in flight*/
+    private final AtomicInteger       maximum  = new AtomicInteger();
+    /** Status codes of the next responses*/
+    private final LinkedList<Integer> failures = new LinkedList<Integer>();
+    /** Delay of each response in milliseconds*/
+    private volatile long             delay    = 0;
+
+    /**
+     * Creates a new instance on a free port and starts it
+     * @throws IOException
+     */
+    StubScholar() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.createContext("/scholar", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    /**
+     * Returns the citation count of the given title in the given year
+     * @param title
+     * @param year
+     * @return
+     */
+    static int getCount(String title, int year) {
+        String id = getId(title);
+        return id == null ? 0 : getCount(id, year, year);
+    }
+
+    /**
+     * Returns the id of the given title, or null if there is none
+     * @param title
+     * @return
+     */
+    private static String getId(String title) {
+        return title.contains("Unknown") ? null : String.valueOf(Math.abs(title.hashCode() % 1000000));
+    }
+
+    /**
+     * Returns the citation count of the given id in the given span of years
+     * @param id
+     * @param from
+     * @param to
+     * @return
+     */
+    private static int getCount(String id, int from, int to) {
+        int count = 0;
+        for (int year = from; year <= to; year++) {
+            count += Math.abs(Integer.parseInt(id) % 89 + year * 7) % 50;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the first group of the given pattern in the given query
+     * @param pattern
+     * @param query
+     * @return
+     */
+    private static String getGroup(Pattern pattern, String query) {
+        Matcher matcher = pattern.matcher(query);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Returns the result page for the given title
+     * @param title
+     * @return
+     */
+    private static String getSearchPage(String title) {
+        StringBuilder builder = new StringBuilder("<html><body>");
+        if (title.contains("Captcha")) {
+            builder.append("<form id=\"gs_captcha_f\"><input name=\"captcha\"></form>");
+        } else if (getId(title) != null) {
+            builder.append("<div class=\"gs_ri\"><h3>").append(title).append("</h3>");
+            builder.append("<a href=\"/scholar?cites=").append(getId(title)).append("&amp;as_sdt=2005\">Zitiert von</a></div>");
+        }
+        return builder.append("</body></html>").toString();
+    }
+
+    /**
+     * Queues the given number of responses with the given status code
+     * @param status
+     * @param count
+     */
+    void fail(int status, int count) {
+        synchronized (failures) {
+            for (int i = 0; i < count; i++) {
+                failures.add(status);
+            }
+        }
+    }
+
+    /**
+     * Returns the host, which can be passed to {@link ReaderGoogleScholar}
+     * @return
+     */
+    String getHost() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the maximal number of requests that have been in flight at the same time
+     * @return
+     */
+    int getMaximum() {
+        return maximum.get();
+    }
+
+    /**
+     * Returns the number of queries for citations
+     * @return
+     */
+    int getQueries() {
+        return queries.get();
+    }
+
+    /**
+     * Returns the number of requests
+     * @return
+     */
+    int getRequests() {
+        return searches.get() + queries.get();
+    }
+
+    /**
+     * Returns the number of searches for ids
+     * @return
+     */
+    int getSearches() {
+        return searches.get();
+    }
+
+    /**
+     * Sets the delay of each response
+     * @param delay In milliseconds
+     */
+    void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * Stops the server
+     */
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Responds to the given request
+     * @param exchange
+     * @throws IOException
+     */
+    private void respond(HttpExchange exchange) throws IOException {
+
+        // Track requests in flight
+        int current = running.incrementAndGet();
+        while (true) {
+            int max = maximum.get();
+            if (current <= max || maximum.compareAndSet(max, current)) {
+                break;
+            }
+        }
+
+        try {
+
+            // Wait
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            // Build page
+            String query = exchange.getRequestURI().getRawQuery();
+            String id = getGroup(CITES, query);
+            String page;
+            if (id != null) {
+                queries.incrementAndGet();
+                int count = getCount(id, Integer.parseInt(getGroup(FROM, query)), Integer.parseInt(getGroup(TO, query)));
+                page = "<html><body><div id=\"gs_ab_md\">Ungef&auml;hr " + String.format(Locale.GERMANY, "%,d", count) +
+                       " Ergebnisse (<b>0,04</b> Sek.)</div></body></html>";
+            } else {
+                searches.incrementAndGet();
+                page = getSearchPage(URLDecoder.decode(getGroup(QUERY, query), "UTF-8"));
+            }
+
+            // Respond
+            Integer status;
+            synchronized (failures) {
+                status = failures.poll();
+            }
+            byte[] body = (status == null ? page : "<html><body>Error</body></html>").getBytes(UTF8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(status == null ? 200 : status, body.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(body);
+            output.close();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A test. It fails, if {@link #run()} throws an exception or an error. Temporary folders that have been
+ * created with {@link #getFolder()} are deleted afterwards.
+ *
+ * @author Fabian Prasser
+ */
+abstract class Test {
+
+    /** Name*/
+    private final String     name;
+    /** Temporary folders*/
+    private final List<File> folders = new ArrayList<File>();
+
+    /**
+     * Creates a new instance
+     * @param name
+     */
+    Test(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Fails, if the given values are not equal
+     * @param message
+     * @param expected
+     * @param actual
+     */
+    static void assertEquals(String message, long expected, long actual) {
+        if (expected != actual) {
+            throw new AssertionError(message + ": expected " + expected + ", but was " + actual);
+        }
+    }
+
+    /**
+     * Fails, if the given condition does not hold
+     * @param message
+     * @param condition
+     */
+    static void assertTrue(String message, boolean condition) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Deletes the given file or folder recursively
+     * @param file
+     * @throws IOException
+     */
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete: " + file);
+        }
+    }
+
+    /**
+     * Runs the given runnable in the given number of threads concurrently and rethrows the first error
+     * @param threads
+     * @param runnable
+     * @throws Exception
+     */
+    static void runConcurrently(int threads, Runnable runnable) throws Exception {
+        final Throwable[] error = new Throwable[1];
+        List<Thread> started = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(runnable);
+            thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                @Override
+                public void uncaughtException(Thread thread, Throwable e) {
+                    synchronized (error) {
+                        if (error[0] == null) {
+                            error[0] = e;
+                        }
+                    }
+                }
+            });
+            started.add(thread);
+            thread.start();
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+        synchronized (error) {
+            if (error[0] != null) {
+                throw new Exception(error[0]);
+            }
+        }
+    }
+
+    /**
+     * Returns the name
+     * @return
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a new and empty temporary folder
+     * @return
+     * @throws IOException
+     */
+    File getFolder() throws IOException {
+        File folder = File.createTempFile("bibliometrics-test", "");
+        if (!folder.delete() || !folder.mkdir()) {
+            throw new IOException("Cannot create: " + folder);
+        }
+        folders.add(folder);
+        return folder;
+    }
+
+    /**
+     * Runs the test
+     * @throws Exception
+     */
+    abstract void run() throws Exception;
+
+    /**
+     * Deletes all temporary folders
+     * @throws IOException
+     */
+    void teardown() throws IOException {
+        for (File folder : folders) {
+            delete(folder);
+        }
+        folders.clear();
+    }
+}
@@ -0,0 +1,116 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for switching to a newer release of DBLP
+ *
+ * @author Fabian Prasser
+ */
+class TestBibliometrics {
+
+    /** Title of an article that is changed*/
+    private static final String CHANGED = "Changed article";
+    /** Title of the changed article in the newer release*/
+    private static final String REVISED = "Revised article";
+    /** Title of an article that is not changed*/
+    private static final String KEPT    = "Kept article";
+    /** Year*/
+    private static final int    YEAR    = 2012;
+
+    /**
+     * Returns all tests
+     * @return
+     */
+    static List<Test> getTests() {
+
+        List<Test> result = new ArrayList<Test>();
+
+        // Refreshing invalidates titles that are only contained in the snapshot of a reopened cache
+        result.add(new Test("bibliometrics.refresh") {
+            @Override
+            void run() throws Exception {
+                File folder = getFolder();
+                File previous = new File(folder, "dblp-1.xml");
+                File next = new File(folder, "dblp-2.xml");
+                writeDump(previous, CHANGED, "2015-01-01");
+                writeDump(next, REVISED, "2015-02-01");
+                write(new File(folder, "cache.csv"), CHANGED + ";" + YEAR + ";1\n" + KEPT + ";" + YEAR + ";2\n");
+
+                // Converts the cache into a snapshot and builds the index
+                Bibliometrics bibliometrics = new Bibliometrics(previous, folder);
+                try {
+                    bibliometrics.buildIndex();
+                } finally {
+                    bibliometrics.close();
+                }
+
+                // Reopen and refresh
+                bibliometrics = new Bibliometrics(previous, folder);
+                try {
+                    bibliometrics.refresh(next);
+                } finally {
+                    bibliometrics.close();
+                }
+
+                // Check
+                Dictionary strings = new Dictionary();
+                ReaderCache cache = new ReaderCache(folder, strings, new Metrics());
+                try {
+                    assertTrue("Changed title not invalidated", !cache.contains(strings.encode(CHANGED), YEAR));
+                    assertEquals("Count", 2, cache.get(strings.encode(KEPT), YEAR));
+                } finally {
+                    cache.close();
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Writes the given content to the given file
+     * @param file
+     * @param content
+     * @throws IOException
+     */
+    private static void write(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes a dump with two articles, the first of which has the given title and modification date
+     * @param file
+     * @param title
+     * @param mdate
+     * @throws IOException
+     */
+    private static void writeDump(File file, String title, String mdate) throws IOException {
+        write(file, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<dblp>\n" +
+                    "<article key=\"journals/t/1\" mdate=\"" + mdate + "\"><author>Author</author><title>" + title + "</title><year>" + YEAR + "</year><journal>Journal</journal></article>\n" +
+                    "<article key=\"journals/t/2\" mdate=\"2015-01-01\"><author>Author</author><title>" + KEPT + "</title><year>" + YEAR + "</year><journal>Journal</journal></article>\n" +
+                    "</dblp>\n");
+    }
+}
@@ -0,0 +1,168 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for reading citations from the stub of Google Scholar and from recorded responses
+ *
+ * @author Fabian Prasser
+ */
+class TestReaderCitations {
+
+    /**
+     * A reader with its own caches
+     * @author Fabian Prasser
+     */
+    private static class Fixture {
+
+        /** Values of titles*/
+        private final Dictionary      strings = new Dictionary();
+        /** Cache of citations*/
+        private final ReaderCache     cache;
+        /** Cache of ids*/
+        private final CacheIds        ids;
+        /** Reader*/
+        private final ReaderCitations citations;
+
+        /**
+         * Creates a new instance, whose caches are located in the given folder
+         * @param folder
+         * @param host
+         * @throws IOException
+         */
+        private Fixture(File folder, String host) throws IOException {
+            Metrics metrics = new Metrics();
+            this.cache = new ReaderCache(folder, strings, metrics);
+            this.ids = new CacheIds(folder, strings);
+            this.citations = new ReaderCitations(cache, ids, host, metrics);
+        }
+
+        /**
+         * Closes the reader and the caches
+         * @throws IOException
+         */
+        private void close() throws IOException {
+            citations.close();
+            ids.close();
+            cache.close();
+        }
+
+        /**
+         * Returns an article with the given title
+         * @param title
+         * @return
+         */
+        private ElementArticle getArticle(String title) {
+            return new ElementArticle(strings, strings.encode(title));
+        }
+    }
+
+    /** Number of threads*/
+    private static final int THREADS = 8;
+
+    /**
+     * Returns all tests
+     * @return
+     */
+    static List<Test> getTests() {
+
+        List<Test> result = new ArrayList<Test>();
+
+        // Concurrent fetches of the same title and year share one search and one query
+        result.add(new Test("citations.coalescing") {
+            @Override
+            void run() throws Exception {
+                StubScholar stub = new StubScholar();
+                final Fixture fixture = new Fixture(getFolder(), stub.getHost());
+                try {
+                    stub.setDelay(200);
+                    fixture.citations.setThreads(THREADS);
+                    final String title = "Coalesced article on data privacy";
+                    final int[] counts = new int[THREADS];
+                    final int[] next = new int[1];
+                    runConcurrently(THREADS, new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                int count = fixture.citations.get(fixture.getArticle(title), 2012);
+                                synchronized (next) {
+                                    counts[next[0]++] = count;
+                                }
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    });
+                    for (int count : counts) {
+                        assertEquals("Count", StubScholar.getCount(title, 2012), count);
+                    }
+                    assertEquals("Searches", 1, stub.getSearches());
+                    assertEquals("Queries", 1, stub.getQueries());
+                    assertTrue("Nothing coalesced", fixture.citations.getCoalesced() > 0);
+                } finally {
+                    fixture.close();
+                    stub.stop();
+                }
+            }
+        });
+
+        // Replaying recorded responses returns the same counts without the server
+        result.add(new Test("citations.replay") {
+            @Override
+            void run() throws Exception {
+                File archive = getFolder();
+                String[] titles = { "Recorded article", "Unknown article", "Another recorded article" };
+
+                // Record
+                List<int[]> recorded = new ArrayList<int[]>();
+                StubScholar stub = new StubScholar();
+                Fixture fixture = new Fixture(getFolder(), stub.getHost());
+                try {
+                    fixture.citations.setRecording(archive);
+                    for (String title : titles) {
+                        recorded.add(fixture.citations.get(fixture.getArticle(title), 2005, 2014));
+                        recorded.add(new int[] { fixture.citations.get(fixture.getArticle(title + " in 2012"), 2012) });
+                    }
+                } finally {
+                    fixture.close();
+                    stub.stop();
+                }
+                for (int i = 0; i < titles.length; i++) {
+                    for (int year = 2005; year <= 2014; year++) {
+                        assertEquals("Count", StubScholar.getCount(titles[i], year), recorded.get(i * 2)[year - 2005]);
+                    }
+                }
+
+                // Replay
+                fixture = new Fixture(getFolder(), stub.getHost());
+                try {
+                    fixture.citations.setReplay(archive, 0);
+                    for (int i = 0; i < titles.length; i++) {
+                        String title = titles[i];
+                        assertTrue("Counts differ", Arrays.equals(recorded.get(i * 2), fixture.citations.get(fixture.getArticle(title), 2005, 2014)));
+                        assertEquals("Count", recorded.get(i * 2 + 1)[0], fixture.citations.get(fixture.getArticle(title + " in 2012"), 2012));
+                    }
+                } finally {
+                    fixture.close();
+                }
+            }
+        });
+
+        return result;
+    }
+}
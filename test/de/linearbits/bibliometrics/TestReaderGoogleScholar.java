@@ -0,0 +1,119 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for retrying requests to the stub of Google Scholar and for handling captchas
+ *
+ * @author Fabian Prasser
+ */
+class TestReaderGoogleScholar {
+
+    /** Delay before the first retry in milliseconds*/
+    private static final long BACKOFF = 100;
+
+    /**
+     * Returns all tests
+     * @return
+     */
+    static List<Test> getTests() {
+
+        List<Test> result = new ArrayList<Test>();
+
+        // Responses with status 429 are retried after the backoff
+        result.add(new Test("scholar.retry") {
+            @Override
+            void run() throws Exception {
+                StubScholar stub = new StubScholar();
+                try {
+                    ReaderGoogleScholar scholar = getReader(stub);
+                    String title = "Retried article";
+                    stub.fail(429, 1);
+                    long start = System.nanoTime();
+                    String id = scholar.getId(title);
+                    long elapsed = (System.nanoTime() - start) / 1000000L;
+                    assertTrue("No id", id != null);
+                    assertEquals("Requests", 2, stub.getRequests());
+                    assertTrue("No backoff: " + elapsed + " ms", elapsed >= BACKOFF);
+
+                    // The delay is doubled for each retry
+                    stub.fail(429, 2);
+                    start = System.nanoTime();
+                    assertEquals("Count", StubScholar.getCount(title, 2012), scholar.getCitationCount(id, 2012, 2012));
+                    elapsed = (System.nanoTime() - start) / 1000000L;
+                    assertEquals("Requests", 5, stub.getRequests());
+                    assertTrue("No backoff: " + elapsed + " ms", elapsed >= BACKOFF * 3);
+                } finally {
+                    stub.stop();
+                }
+            }
+        });
+
+        // Requests fail after the last retry
+        result.add(new Test("scholar.retry.exhausted") {
+            @Override
+            void run() throws Exception {
+                StubScholar stub = new StubScholar();
+                try {
+                    ReaderGoogleScholar scholar = getReader(stub);
+                    stub.fail(503, 3);
+                    try {
+                        scholar.getId("Failing article");
+                        throw new AssertionError("No exception");
+                    } catch (IOException e) {
+                        assertTrue("Wrong exception: " + e, e.getMessage().contains("503"));
+                    }
+                    assertEquals("Requests", 3, stub.getRequests());
+                } finally {
+                    stub.stop();
+                }
+            }
+        });
+
+        // Captchas fail immediately
+        result.add(new Test("scholar.captcha") {
+            @Override
+            void run() throws Exception {
+                StubScholar stub = new StubScholar();
+                try {
+                    ReaderGoogleScholar scholar = getReader(stub);
+                    try {
+                        scholar.getId("Captcha article");
+                        throw new AssertionError("No exception");
+                    } catch (IOException e) {
+                        assertTrue("Wrong exception: " + e, e.getMessage().contains("Locked out"));
+                    }
+                    assertEquals("Requests", 1, stub.getRequests());
+                } finally {
+                    stub.stop();
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns a reader for the given stub, which retries requests twice
+     * @param stub
+     * @return
+     */
+    private static ReaderGoogleScholar getReader(StubScholar stub) {
+        ReaderGoogleScholar scholar = new ReaderGoogleScholar(stub.getHost(), new Throttle(1, 0d), new Metrics());
+        scholar.getClient().setRetries(2, BACKOFF);
+        return scholar;
+    }
+}
@@ -0,0 +1,181 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the throttle, on its own and in front of the stub of Google Scholar
+ *
+ * @author Fabian Prasser
+ */
+class TestThrottle {
+
+    /** Number of threads*/
+    private static final int  THREADS  = 6;
+    /** Number of requests per thread*/
+    private static final int  REQUESTS = 5;
+    /** Maximal number of requests in flight*/
+    private static final int  MAXIMUM  = 2;
+    /** Requests per second*/
+    private static final int  RATE     = 100;
+    /** Tolerance for the spacing, which covers sleeping with a resolution of milliseconds*/
+    private static final long SLACK    = 1000000L;
+    /** Time given to a thread to take a slot, in milliseconds*/
+    private static final long PATIENCE = 200;
+
+    /**
+     * Returns all tests
+     * @return
+     */
+    static List<Test> getTests() {
+
+        List<Test> result = new ArrayList<Test>();
+
+        // Requests never exceed the maximum and each one starts in a slot of its own
+        result.add(new Test("throttle.spacing") {
+            @Override
+            void run() throws Exception {
+                final long begin = System.nanoTime();
+                final Throttle throttle = new Throttle(MAXIMUM, RATE);
+                final AtomicInteger running = new AtomicInteger();
+                final AtomicInteger maximum = new AtomicInteger();
+                final long[] starts = new long[THREADS * REQUESTS];
+                final AtomicInteger next = new AtomicInteger();
+                runConcurrently(THREADS, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < REQUESTS; i++) {
+                                throttle.acquire();
+                                try {
+                                    starts[next.getAndIncrement()] = System.nanoTime();
+                                    update(maximum, running.incrementAndGet());
+                                    Thread.sleep(5);
+                                    running.decrementAndGet();
+                                } finally {
+                                    throttle.release();
+                                }
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+                assertTrue("Too many requests in flight: " + maximum.get(), maximum.get() <= MAXIMUM);
+                Arrays.sort(starts);
+                long interval = 1000000000L / RATE;
+                for (int i = 0; i < starts.length; i++) {
+                    assertTrue("Request " + i + " started too early", starts[i] - begin >= i * interval - SLACK);
+                }
+            }
+        });
+
+        // Requests to a server never exceed the maximum
+        result.add(new Test("throttle.server") {
+            @Override
+            void run() throws Exception {
+                StubScholar stub = new StubScholar();
+                try {
+                    stub.setDelay(20);
+                    final ReaderGoogleScholar scholar = new ReaderGoogleScholar(stub.getHost(), new Throttle(MAXIMUM, 0d), new Metrics());
+                    runConcurrently(THREADS, new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                for (int i = 0; i < REQUESTS; i++) {
+                                    scholar.getCitationCount("42", 2010, 2012);
+                                }
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    });
+                    assertEquals("Requests", THREADS * REQUESTS, stub.getRequests());
+                    assertTrue("Too many requests in flight: " + stub.getMaximum(), stub.getMaximum() <= MAXIMUM);
+                } finally {
+                    stub.stop();
+                }
+            }
+        });
+
+        // Interrupting a waiting request does not free a slot that it never took
+        result.add(new Test("throttle.interrupt") {
+            @Override
+            void run() throws Exception {
+                final Throttle throttle = new Throttle(1, 0d);
+                throttle.acquire();
+
+                // Interrupt a waiting request
+                final AtomicBoolean interrupted = new AtomicBoolean();
+                Thread waiting = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            throttle.acquire();
+                            throttle.release();
+                        } catch (InterruptedIOException e) {
+                            interrupted.set(true);
+                        }
+                    }
+                });
+                waiting.start();
+                Thread.sleep(PATIENCE);
+                waiting.interrupt();
+                waiting.join();
+                assertTrue("Not interrupted", interrupted.get());
+
+                // The slot is still taken
+                final AtomicBoolean acquired = new AtomicBoolean();
+                Thread next = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            throttle.acquire();
+                            acquired.set(true);
+                            throttle.release();
+                        } catch (InterruptedIOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+                next.start();
+                Thread.sleep(PATIENCE);
+                assertTrue("Too many requests in flight", !acquired.get());
+                throttle.release();
+                next.join();
+                assertTrue("Slot not freed", acquired.get());
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Raises the given maximum to the given value
+     * @param maximum
+     * @param value
+     */
+    private static void update(AtomicInteger maximum, int value) {
+        while (true) {
+            int current = maximum.get();
+            if (value <= current || maximum.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+}
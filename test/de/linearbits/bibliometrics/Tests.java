@@ -0,0 +1,85 @@
+/* ******************************************************************************
+ * Copyright (c) 2015 Fabian Prasser.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Fabian Prasser - initial API and implementation
+ * ****************************************************************************
+ */
+package de.linearbits.bibliometrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the tests, whose names match one of the regular expressions given as arguments, or all tests,
+ * and exits with a non-zero status if a test fails. Google Scholar is replaced by a local stub. The tests
+ * are compiled and run from the root of the project with:<br>
+ * <br>
+ * <code>javac -cp lib/tagsoup-1.2.1.jar -d test-bin src/de/linearbits/bibliometrics/*.java test/de/linearbits/bibliometrics/*.java</code><br>
+ * <code>java -cp test-bin:lib/tagsoup-1.2.1.jar de.linearbits.bibliometrics.Tests [regex...]</code><br>
+ *
+ * @author Fabian Prasser
+ */
+public class Tests {
+
+    /**
+     * Main entry point
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        // Collect
+        List<Test> tests = new ArrayList<Test>();
+        tests.addAll(TestThrottle.getTests());
+        tests.addAll(TestReaderGoogleScholar.getTests());
+        tests.addAll(TestReaderCitations.getTests());
+        tests.addAll(TestBibliometrics.getTests());
+
+        // Run
+        int failed = 0;
+        int run = 0;
+        for (Test test : tests) {
+            if (isSelected(test, args)) {
+                run++;
+                long start = System.nanoTime();
+                try {
+                    test.run();
+                    System.out.println(String.format("%-28s passed in %d ms", test.getName(), (System.nanoTime() - start) / 1000000L));
+                } catch (Throwable e) {
+                    failed++;
+                    System.out.println(String.format("%-28s FAILED", test.getName()));
+                    e.printStackTrace(System.out);
+                } finally {
+                    test.teardown();
+                }
+            }
+        }
+        System.out.println(run + " tests, " + failed + " failures");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * Returns whether the given test has been selected
+     * @param test
+     * @param patterns
+     * @return
+     */
+    private static boolean isSelected(Test test, String[] patterns) {
+        if (patterns.length == 0) {
+            return true;
+        }
+        for (String pattern : patterns) {
+            if (Pattern.compile(pattern).matcher(test.getName()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}